@@ -0,0 +1,108 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familydashboard.internal;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.security.authorization.AuthorizationManager;
+import org.xwiki.security.authorization.Right;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Default implementation of {@link DocumentRightsChecker}, delegating to the {@link AuthorizationManager} and caching
+ * the results in the current {@link ExecutionContext}, which only lives as long as the current request.
+ *
+ * @version $Id$
+ */
+@Component
+@Singleton
+public class DefaultDocumentRightsChecker implements DocumentRightsChecker
+{
+    /** The execution context property holding the rights checked during the current request. */
+    private static final String CACHE_PROPERTY = "familydashboard.documentRights";
+
+    @Inject
+    private AuthorizationManager authorizationManager;
+
+    @Inject
+    private Execution execution;
+
+    @Override
+    public Set<DocumentReference> filterAccessible(Right right, DocumentReference userReference,
+        Collection<DocumentReference> documents)
+    {
+        Set<DocumentReference> result = new HashSet<>();
+        if (documents == null || documents.isEmpty()) {
+            return result;
+        }
+
+        ConcurrentMap<DocumentReference, Boolean> checked = getRequestCache(right, userReference);
+        for (DocumentReference document : documents) {
+            if (document == null) {
+                continue;
+            }
+            Boolean allowed = checked.get(document);
+            if (allowed == null) {
+                allowed = this.authorizationManager.hasAccess(right, userReference, document);
+                checked.put(document, allowed);
+            }
+            if (allowed) {
+                result.add(document);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the rights already checked during the current request for the given user and right. Outside of a
+     * request a new, throwaway map is returned.
+     *
+     * @param right the checked right
+     * @param userReference the checked user, may be {@code null}
+     * @return a thread-safe mutable map from document to access status
+     */
+    @SuppressWarnings("unchecked")
+    private ConcurrentMap<DocumentReference, Boolean> getRequestCache(Right right, DocumentReference userReference)
+    {
+        ExecutionContext context = this.execution.getContext();
+        if (context == null) {
+            return new ConcurrentHashMap<>();
+        }
+
+        ConcurrentMap<String, ConcurrentMap<DocumentReference, Boolean>> cache;
+        synchronized (context) {
+            cache = (ConcurrentMap<String, ConcurrentMap<DocumentReference, Boolean>>)
+                context.getProperty(CACHE_PROPERTY);
+            if (cache == null) {
+                cache = new ConcurrentHashMap<>();
+                context.setProperty(CACHE_PROPERTY, cache);
+            }
+        }
+
+        String key = right.getName() + '/' + userReference;
+        ConcurrentMap<DocumentReference, Boolean> checked = cache.get(key);
+        if (checked == null) {
+            ConcurrentMap<DocumentReference, Boolean> created = new ConcurrentHashMap<>();
+            checked = cache.putIfAbsent(key, created);
+            if (checked == null) {
+                checked = created;
+            }
+        }
+        return checked;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familydashboard.internal;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.cache.event.CacheEntryEvent;
+import org.xwiki.cache.event.CacheEntryListener;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.model.reference.DocumentReference;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Default implementation of {@link FamilyTableCache}, using an LRU cache from the XWiki cache manager and keeping track
+ * of which entries were rendered from which documents. Each entry's dependencies are stored along with it, so that its
+ * key is dropped from the sets of all these documents as soon as the cache removes or evicts the entry, whichever
+ * document caused it.
+ *
+ * @version $Id$
+ */
+@Component
+@Singleton
+public class DefaultFamilyTableCache implements FamilyTableCache, Initializable, CacheEntryListener<String>
+{
+    /** The maximum number of rendered tables kept in memory. */
+    private static final int CAPACITY = 500;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    private Cache<String> cache;
+
+    /** Rendering keys indexed by the documents they depend on. */
+    private final ConcurrentMap<DocumentReference, Set<String>> keysByDocument = new ConcurrentHashMap<>();
+
+    /** The documents each rendering key depends on. */
+    private final ConcurrentMap<String, Collection<DocumentReference>> dependenciesByKey = new ConcurrentHashMap<>();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        try {
+            this.cache =
+                this.cacheManager.createNewCache(new LRUCacheConfiguration("familydashboard.tables", CAPACITY));
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to create the family table cache", e);
+        }
+        this.cache.addCacheEntryListener(this);
+    }
+
+    @Override
+    public String get(String key)
+    {
+        return this.cache.get(key);
+    }
+
+    @Override
+    public void put(String key, Collection<DocumentReference> dependencies, String html)
+    {
+        Collection<DocumentReference> stored = new ArrayList<>(dependencies);
+        Collection<DocumentReference> previous = this.dependenciesByKey.put(key, stored);
+        if (previous != null) {
+            untrack(key, previous);
+        }
+        for (DocumentReference dependency : stored) {
+            Set<String> keys;
+            do {
+                keys = this.keysByDocument.get(dependency);
+                if (keys == null) {
+                    Set<String> created = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+                    keys = this.keysByDocument.putIfAbsent(dependency, created);
+                    if (keys == null) {
+                        keys = created;
+                    }
+                }
+                keys.add(key);
+                // Retry if the set was dropped as empty by a concurrent removal
+            } while (this.keysByDocument.get(dependency) != keys);
+        }
+        this.cache.set(key, html);
+    }
+
+    @Override
+    public void invalidate(DocumentReference document)
+    {
+        Set<String> keys = this.keysByDocument.remove(document);
+        if (keys != null) {
+            for (String key : keys) {
+                this.cache.remove(key);
+            }
+        }
+    }
+
+    @Override
+    public void invalidateAll()
+    {
+        this.keysByDocument.clear();
+        this.dependenciesByKey.clear();
+        this.cache.removeAll();
+    }
+
+    @Override
+    public void cacheEntryAdded(CacheEntryEvent<String> event)
+    {
+        // Entries are tracked when they are put
+    }
+
+    @Override
+    public void cacheEntryModified(CacheEntryEvent<String> event)
+    {
+        // Dependencies are updated when entries are put
+    }
+
+    @Override
+    public void cacheEntryRemoved(CacheEntryEvent<String> event)
+    {
+        String key = event.getEntry().getKey();
+        Collection<DocumentReference> dependencies = this.dependenciesByKey.remove(key);
+        if (dependencies != null) {
+            untrack(key, dependencies);
+        }
+    }
+
+    private void untrack(String key, Collection<DocumentReference> dependencies)
+    {
+        for (DocumentReference dependency : dependencies) {
+            Set<String> keys = this.keysByDocument.get(dependency);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    this.keysByDocument.remove(dependency, keys);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familydashboard.internal;
+
+import org.xwiki.bridge.DocumentAccessBridge;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.json.JSONObject;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Default implementation of {@link FamilyTableConfigurationSource}, caching the compiled configuration of the main
+ * wiki. {@code FamilyTableConfigurationListener} invalidates it whenever the configuration document changes, which
+ * increments a generation counter. The cached configuration is tagged with the generation read before loading it, and
+ * is only used while that generation is current, so a configuration loaded while the document was being saved is
+ * never served afterwards.
+ *
+ * @version $Id$
+ */
+@Component
+@Singleton
+public class DefaultFamilyTableConfigurationSource implements FamilyTableConfigurationSource
+{
+    @Inject
+    private DocumentAccessBridge documentAccessBridge;
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private volatile CachedConfiguration cached;
+
+    @Override
+    public FamilyTableConfiguration getConfiguration() throws Exception
+    {
+        long currentGeneration = this.generation.get();
+        CachedConfiguration entry = this.cached;
+        if (entry != null && entry.generation == currentGeneration) {
+            return entry.configuration;
+        }
+        FamilyTableConfiguration configuration = load();
+        this.cached = new CachedConfiguration(currentGeneration, configuration);
+        return configuration;
+    }
+
+    @Override
+    public void invalidate(String wikiId)
+    {
+        if (this.xcontextProvider.get().getMainXWiki().equals(wikiId)) {
+            this.generation.incrementAndGet();
+        }
+    }
+
+    private FamilyTableConfiguration load() throws Exception
+    {
+        XWikiDocument configDoc = (XWikiDocument) this.documentAccessBridge.getDocument(new DocumentReference(
+            this.xcontextProvider.get().getMainXWiki(), CONFIGURATION_SPACE, CONFIGURATION_DOCUMENT));
+
+        return FamilyTableConfiguration.fromJSON(new JSONObject(configDoc.getContent()), configDoc.getVersion());
+    }
+
+    /**
+     * A compiled configuration, along with the generation that was current when it started loading.
+     */
+    private static final class CachedConfiguration
+    {
+        private final long generation;
+
+        private final FamilyTableConfiguration configuration;
+
+        CachedConfiguration(long generation, FamilyTableConfiguration configuration)
+        {
+            this.generation = generation;
+            this.configuration = configuration;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familydashboard.internal;
+
+import org.phenotips.concurrent.DaemonThreadFactory;
+import org.phenotips.concurrent.WorkerContextPropagator;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * Default implementation of {@link TableRowExecutor}, using a fixed size thread pool with a bounded queue. When the
+ * queue is full, tasks run in the submitting thread, so a busy server degrades to sequential rendering instead of
+ * rejecting requests. Configured through the following {@code xwiki.properties} entries:
+ * <ul>
+ * <li>{@code phenotips.familydashboard.parallelRows.enabled}: whether rows are built concurrently, {@code false} by
+ * default</li>
+ * <li>{@code phenotips.familydashboard.parallelRows.threads}: the number of worker threads, by default the number of
+ * available processors, at most 8</li>
+ * </ul>
+ *
+ * @version $Id$
+ */
+@Component
+@Singleton
+public class DefaultTableRowExecutor implements TableRowExecutor, Initializable, Disposable
+{
+    private static final String ENABLED_PROPERTY = "phenotips.familydashboard.parallelRows.enabled";
+
+    private static final String THREADS_PROPERTY = "phenotips.familydashboard.parallelRows.threads";
+
+    private static final int MAX_DEFAULT_THREADS = 8;
+
+    private static final int QUEUE_CAPACITY = 200;
+
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    @Inject
+    private WorkerContextPropagator contextPropagator;
+
+    private boolean enabled;
+
+    private ThreadPoolExecutor executor;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.enabled = this.configuration.getProperty(ENABLED_PROPERTY, Boolean.FALSE);
+        if (!this.enabled) {
+            return;
+        }
+        int threads = this.configuration.getProperty(THREADS_PROPERTY,
+            Math.min(Runtime.getRuntime().availableProcessors(), MAX_DEFAULT_THREADS));
+        this.executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), new DaemonThreadFactory("familydashboard-rows-"),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return this.enabled;
+    }
+
+    @Override
+    public <T> List<T> invokeAll(List<Callable<T>> tasks) throws Exception
+    {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (!this.enabled) {
+            for (Callable<T> task : tasks) {
+                results.add(task.call());
+            }
+            return results;
+        }
+
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        try {
+            for (Callable<T> task : tasks) {
+                futures.add(this.executor.submit(this.contextPropagator.propagate(task)));
+            }
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familydashboard.internal;
+
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.json.JSONObject;
+
+/**
+ * Default implementation of {@link VocabularyTermCache}, using an LRU cache from the XWiki cache manager.
+ *
+ * @version $Id$
+ */
+@Component
+@Singleton
+public class DefaultVocabularyTermCache implements VocabularyTermCache, Initializable
+{
+    /** The maximum number of terms, from all vocabularies, kept in memory. */
+    private static final int CAPACITY = 5000;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    private Cache<CachedTerm> cache;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        try {
+            this.cache =
+                this.cacheManager.createNewCache(new LRUCacheConfiguration("familydashboard.terms", CAPACITY));
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to create the vocabulary term cache", e);
+        }
+    }
+
+    @Override
+    public VocabularyTerm getTerm(Vocabulary vocabulary, String id)
+    {
+        return lookup(vocabulary, id).term;
+    }
+
+    @Override
+    public Map<String, VocabularyTerm> getTerms(Vocabulary vocabulary, Collection<String> ids)
+    {
+        Map<String, VocabularyTerm> result = new LinkedHashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        for (String id : ids) {
+            CachedTerm cached = this.cache.get(getKey(vocabulary, id));
+            if (cached == null) {
+                missing.add(id);
+            } else {
+                this.hits.incrementAndGet();
+                result.put(id, cached.term);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            Map<String, VocabularyTerm> fetched = new HashMap<>();
+            for (VocabularyTerm term : vocabulary.getTerms(missing)) {
+                fetched.put(term.getId(), term);
+            }
+            this.misses.addAndGet(missing.size());
+            for (String id : missing) {
+                VocabularyTerm term = fetched.get(id);
+                if (term == null) {
+                    // The identifier may not be in its canonical form (e.g. a missing prefix), let the vocabulary
+                    // resolve it
+                    term = vocabulary.getTerm(id);
+                }
+                this.cache.set(getKey(vocabulary, id), new CachedTerm(term));
+                result.put(id, term);
+            }
+        }
+
+        // Keep the request order and drop the identifiers that didn't match anything
+        Map<String, VocabularyTerm> ordered = new LinkedHashMap<>();
+        for (String id : ids) {
+            VocabularyTerm term = result.get(id);
+            if (term != null) {
+                ordered.put(id, term);
+            }
+        }
+        return ordered;
+    }
+
+    @Override
+    public JSONObject getTermJSON(Vocabulary vocabulary, String id)
+    {
+        JSONObject json = lookup(vocabulary, id).getJSON();
+        if (json == null) {
+            return null;
+        }
+        // getNames returns null instead of an empty array for an empty object
+        return json.length() == 0 ? new JSONObject() : new JSONObject(json, JSONObject.getNames(json));
+    }
+
+    @Override
+    public long getHitCount()
+    {
+        return this.hits.get();
+    }
+
+    @Override
+    public long getMissCount()
+    {
+        return this.misses.get();
+    }
+
+    @Override
+    public void clear()
+    {
+        this.cache.removeAll();
+    }
+
+    private CachedTerm lookup(Vocabulary vocabulary, String id)
+    {
+        String key = getKey(vocabulary, id);
+        CachedTerm cached = this.cache.get(key);
+        if (cached == null) {
+            this.misses.incrementAndGet();
+            cached = new CachedTerm(vocabulary.getTerm(id));
+            this.cache.set(key, cached);
+        } else {
+            this.hits.incrementAndGet();
+        }
+        return cached;
+    }
+
+    private String getKey(Vocabulary vocabulary, String id)
+    {
+        return vocabulary.getIdentifier() + '/' + id;
+    }
+
+    /**
+     * A cached lookup result, possibly empty, along with its JSON representation computed on first use.
+     */
+    private static final class CachedTerm
+    {
+        private final VocabularyTerm term;
+
+        private volatile JSONObject json;
+
+        CachedTerm(VocabularyTerm term)
+        {
+            this.term = term;
+        }
+
+        JSONObject getJSON()
+        {
+            if (this.term != null && this.json == null) {
+                this.json = this.term.toJSON();
+            }
+            return this.json;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familydashboard.internal;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.security.authorization.Right;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Checks access rights on many documents at once. Results are remembered for the duration of the current request, so
+ * the same document is never checked twice for the same user and right while rendering a page.
+ *
+ * @version $Id$
+ */
+@Role
+public interface DocumentRightsChecker
+{
+    /**
+     * Returns the subset of the given documents on which the user has the given right.
+     *
+     * @param right the right to check, e.g. {@link Right#VIEW}
+     * @param userReference the user whose rights are checked, {@code null} for guest
+     * @param documents the documents to check, {@code null} items are ignored
+     * @return the documents that the user can access, never {@code null}
+     */
+    Set<DocumentReference> filterAccessible(Right right, DocumentReference userReference,
+        Collection<DocumentReference> documents);
+}
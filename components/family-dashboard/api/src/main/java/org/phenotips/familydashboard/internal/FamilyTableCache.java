@@ -0,0 +1,51 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familydashboard.internal;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.model.reference.DocumentReference;
+
+import java.util.Collection;
+
+/**
+ * Cache of rendered tables of family members. Keys are built by {@link TableGenerator#getCacheKey(String)} and already
+ * change whenever the family, one of its members or the viewer's rights change; entries are additionally evicted as
+ * soon as one of the documents they were rendered from is modified, so that stale tables don't linger in memory.
+ *
+ * @version $Id$
+ */
+@Role
+public interface FamilyTableCache
+{
+    /**
+     * Returns a previously rendered table.
+     *
+     * @param key the rendering key
+     * @return the cached HTML, or {@code null} if there is no such entry
+     */
+    String get(String key);
+
+    /**
+     * Stores a rendered table.
+     *
+     * @param key the rendering key
+     * @param dependencies the documents the table was rendered from
+     * @param html the rendered HTML
+     */
+    void put(String key, Collection<DocumentReference> dependencies, String html);
+
+    /**
+     * Evicts all the tables rendered from the given document.
+     *
+     * @param document a modified or deleted document
+     */
+    void invalidate(DocumentReference document);
+
+    /** Evicts all the cached tables, for example after a change in access rights. */
+    void invalidateAll();
+}
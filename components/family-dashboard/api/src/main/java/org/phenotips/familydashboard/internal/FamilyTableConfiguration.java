@@ -0,0 +1,137 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familydashboard.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Immutable, precompiled configuration of the table of family members, as stored in the
+ * {@code PhenoTips.FamilySheetCode} document. Instances are safe to share between concurrent page views.
+ *
+ * @version $Id$
+ */
+public final class FamilyTableConfiguration
+{
+    private static final String ORDER_KEY = "order";
+
+    private static final String LABELS_KEY = "labels";
+
+    private static final String TRANSLATED_LABELS_KEY = "translatedLabels";
+
+    private final String version;
+
+    private final String source;
+
+    private final List<String> selectedFields;
+
+    private final Map<String, String> tableHeaders;
+
+    private final Map<String, String> translatedLabels;
+
+    private FamilyTableConfiguration(String version, String source, List<String> selectedFields,
+        Map<String, String> tableHeaders, Map<String, String> translatedLabels)
+    {
+        this.version = version;
+        this.source = source;
+        this.selectedFields = Collections.unmodifiableList(selectedFields);
+        this.tableHeaders = Collections.unmodifiableMap(tableHeaders);
+        this.translatedLabels = Collections.unmodifiableMap(translatedLabels);
+    }
+
+    /**
+     * Compiles the table configuration from its JSON representation.
+     *
+     * @param config - the configuration object obtained from a XWiki document.
+     * @param version - the version of the document holding the configuration, may be null.
+     * @return the compiled configuration.
+     * @throws Exception if the family table configuration is invalid or out of sync with current patient data
+     *                      representations.
+     */
+    public static FamilyTableConfiguration fromJSON(JSONObject config, String version) throws Exception
+    {
+        try {
+            JSONObject labels = config.getJSONObject(LABELS_KEY);
+            JSONObject translated = config.getJSONObject(TRANSLATED_LABELS_KEY);
+            JSONArray order = config.getJSONArray(ORDER_KEY);
+
+            List<String> fields = new ArrayList<>(order.length());
+            Map<String, String> headers = new HashMap<>();
+            Map<String, String> translations = new HashMap<>();
+            for (int i = 0; i < order.length(); i++) {
+                String field = order.getString(i);
+                fields.add(field);
+                headers.put(field, labels.getString(field));
+                translations.put(field, translated.optString(field));
+            }
+            return new FamilyTableConfiguration(version, config.toString(), fields, headers, translations);
+        } catch (JSONException e) {
+            throw new Exception("Error retrieving table headers for the table of family members", e);
+        }
+    }
+
+    /**
+     * Returns the version of the document from which this configuration was loaded.
+     *
+     * @return a document version, or {@code null} if unknown
+     */
+    public String getVersion()
+    {
+        return this.version;
+    }
+
+    /**
+     * Returns the fields displayed as table columns, in display order.
+     *
+     * @return an unmodifiable list of field names
+     */
+    public List<String> getSelectedFields()
+    {
+        return this.selectedFields;
+    }
+
+    /**
+     * Returns the header label of the column displaying the given field.
+     *
+     * @param field the name of a selected field
+     * @return the column header
+     */
+    public String getTableHeader(String field)
+    {
+        return this.tableHeaders.get(field);
+    }
+
+    /**
+     * Returns the name under which the given field is stored in pedigree member data.
+     *
+     * @param field the name of a selected field
+     * @return the pedigree property name, an empty string if there is none
+     */
+    public String getTranslatedLabel(String field)
+    {
+        String label = this.translatedLabels.get(field);
+        return label == null ? "" : label;
+    }
+
+    /**
+     * Returns a new JSON representation of this configuration, as originally stored in the configuration document.
+     *
+     * @return a new, mutable JSON object
+     */
+    public JSONObject toJSON()
+    {
+        return new JSONObject(this.source);
+    }
+}
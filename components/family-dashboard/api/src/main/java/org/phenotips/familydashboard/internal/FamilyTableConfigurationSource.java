@@ -0,0 +1,43 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familydashboard.internal;
+
+import org.xwiki.component.annotation.Role;
+
+/**
+ * Provides the configuration of the table of family members, loaded once from the main wiki and reused until the
+ * configuration document changes.
+ *
+ * @version $Id$
+ */
+@Role
+public interface FamilyTableConfigurationSource
+{
+    /** The space holding the configuration document. */
+    String CONFIGURATION_SPACE = "PhenoTips";
+
+    /** The name of the configuration document. */
+    String CONFIGURATION_DOCUMENT = "FamilySheetCode";
+
+    /**
+     * Returns the table configuration, loading it from the configuration document of the main wiki if it isn't already
+     * cached.
+     *
+     * @return the compiled table configuration
+     * @throws Exception if the configuration document cannot be retrieved or is invalid
+     */
+    FamilyTableConfiguration getConfiguration() throws Exception;
+
+    /**
+     * Discards the cached configuration if the configuration document of the main wiki changed, forcing it to be
+     * reloaded on next access.
+     *
+     * @param wikiId the identifier of the wiki whose configuration document changed
+     */
+    void invalidate(String wikiId);
+}
@@ -16,6 +16,7 @@
 import java.util.Map;
 
 import org.json.JSONArray;
+import org.json.JSONObject;
 
 /**
  * Class for determining which phenotype terms from a predefined set are relevant to a given set of OMIM disorders.
@@ -26,6 +27,7 @@
 {
     protected Vocabulary omimService;
     protected Vocabulary hpoService;
+    protected VocabularyTermCache termCache;
 
     private Map<String, VocabularyTerm> omimTerms;
     private Map<String, VocabularyTerm> hpoTerms;
@@ -41,6 +43,19 @@
      */
     public OmimToHpoMapper(Vocabulary omimService, Vocabulary hpoService)
     {
+        this(null, omimService, hpoService);
+    }
+
+    /**
+     * Constructor for this class, looking up terms through a shared term cache.
+     *
+     * @param termCache - the shared vocabulary term cache, may be null to always query the vocabularies
+     * @param omimService - the omim vocabulary ontology service
+     * @param hpoService - the hpo vocabulary ontology service
+     */
+    public OmimToHpoMapper(VocabularyTermCache termCache, Vocabulary omimService, Vocabulary hpoService)
+    {
+        this.termCache = termCache;
         this.omimService = omimService;
         this.hpoService = hpoService;
     }
@@ -95,7 +110,7 @@ private void mapOmimToHpo()
     {
         this.internalMap = new HashMap<>();
         for (VocabularyTerm omimTerm : this.omimTerms.values()) {
-            JSONArray actualSymptoms = omimTerm.toJSON().optJSONArray("actual_symptom");
+            JSONArray actualSymptoms = getTermJSON(omimTerm).optJSONArray("actual_symptom");
             if (actualSymptoms == null) {
                 this.internalMap.put(omimTerm.getId(), new HashMap<String, VocabularyTerm>());
                 continue;
@@ -182,7 +197,8 @@ private VocabularyTerm findFeatureParentsMatch(String symptomQuery)
      */
     private VocabularyTerm findDisorderSymptomParentsMatch(String symptomQuery)
     {
-        VocabularyTerm symptom = this.hpoService.getTerm(symptomQuery);
+        VocabularyTerm symptom = this.termCache != null ? this.termCache.getTerm(this.hpoService, symptomQuery)
+            : this.hpoService.getTerm(symptomQuery);
         if (symptom != null) {
             for (VocabularyTerm parent : symptom.getParents()) {
                 if (this.hpoTerms.containsKey(parent.getId())) {
@@ -195,23 +211,47 @@ private VocabularyTerm findDisorderSymptomParentsMatch(String symptomQuery)
 
     private void setDisorders(List<String> disorders)
     {
-        this.omimTerms = new HashMap<>();
-        for (String disorder : disorders) {
-            VocabularyTerm term = this.omimService.getTerm(disorder);
-            if (term != null) {
-                this.omimTerms.put(term.getId(), term);
+        this.omimTerms = getTermsById(this.omimService, disorders);
+    }
+
+    private void setFeatures(List<String> features)
+    {
+        this.hpoTerms = getTermsById(this.hpoService, features);
+    }
+
+    /**
+     * Looks up the given terms, in one batch when a term cache is available, and indexes them by their canonical ID.
+     *
+     * @param vocabulary the vocabulary to look into
+     * @param ids the requested term identifiers
+     * @return a map from term IDs to the found terms
+     */
+    private Map<String, VocabularyTerm> getTermsById(Vocabulary vocabulary, List<String> ids)
+    {
+        Map<String, VocabularyTerm> terms = new HashMap<>();
+        if (this.termCache != null) {
+            for (VocabularyTerm term : this.termCache.getTerms(vocabulary, ids).values()) {
+                terms.put(term.getId(), term);
+            }
+        } else {
+            for (String id : ids) {
+                VocabularyTerm term = vocabulary.getTerm(id);
+                if (term != null) {
+                    terms.put(term.getId(), term);
+                }
             }
         }
+        return terms;
     }
 
-    private void setFeatures(List<String> features)
+    private JSONObject getTermJSON(VocabularyTerm omimTerm)
     {
-        this.hpoTerms = new HashMap<>();
-        for (String feature : features) {
-            VocabularyTerm term = this.hpoService.getTerm(feature);
-            if (term != null) {
-                this.hpoTerms.put(term.getId(), term);
+        if (this.termCache != null) {
+            JSONObject json = this.termCache.getTermJSON(this.omimService, omimTerm.getId());
+            if (json != null) {
+                return json;
             }
         }
+        return omimTerm.toJSON();
     }
 }
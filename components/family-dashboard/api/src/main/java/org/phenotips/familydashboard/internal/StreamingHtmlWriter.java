@@ -0,0 +1,208 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familydashboard.internal;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Minimal streaming markup writer which writes elements, attributes and escaped text directly to a {@link Writer},
+ * without building an intermediate DOM. The output mirrors what the default JAXP identity transformer produces for an
+ * equivalent DOM document without an XML declaration: elements without content are written as self-closing tags,
+ * and text and attribute values are escaped the same way.
+ *
+ * @version $Id$
+ */
+public class StreamingHtmlWriter
+{
+    private static final char LT = '<';
+
+    private static final char GT = '>';
+
+    private final Writer out;
+
+    private final Deque<String> openElements = new ArrayDeque<>();
+
+    /** Whether the start tag of the innermost open element still awaits its closing bracket. */
+    private boolean startTagOpen;
+
+    /**
+     * Constructor for this class.
+     *
+     * @param out the writer where the markup is written
+     */
+    public StreamingHtmlWriter(Writer out)
+    {
+        this.out = out;
+    }
+
+    /**
+     * Opens a new element as a child of the current element.
+     *
+     * @param name the name of the element
+     * @return this writer, for chaining
+     * @throws IOException if writing to the underlying writer fails
+     */
+    public StreamingHtmlWriter startElement(String name) throws IOException
+    {
+        closeStartTag();
+        this.out.write(LT);
+        this.out.write(name);
+        this.openElements.push(name);
+        this.startTagOpen = true;
+        return this;
+    }
+
+    /**
+     * Adds an attribute to the element that was just opened. Must be called before any content is written for that
+     * element.
+     *
+     * @param name the name of the attribute
+     * @param value the value of the attribute, {@code null} is written as an empty value
+     * @return this writer, for chaining
+     * @throws IOException if writing to the underlying writer fails
+     */
+    public StreamingHtmlWriter attribute(String name, String value) throws IOException
+    {
+        if (!this.startTagOpen) {
+            throw new IllegalStateException("Attributes can only be added right after an element is started");
+        }
+        this.out.write(' ');
+        this.out.write(name);
+        this.out.write("=\"");
+        writeEscaped(value, true);
+        this.out.write('"');
+        return this;
+    }
+
+    /**
+     * Writes escaped text as the content of the current element.
+     *
+     * @param text the text to write, {@code null} is ignored
+     * @return this writer, for chaining
+     * @throws IOException if writing to the underlying writer fails
+     */
+    public StreamingHtmlWriter text(String text) throws IOException
+    {
+        if (text == null || text.isEmpty()) {
+            return this;
+        }
+        closeStartTag();
+        writeEscaped(text, false);
+        return this;
+    }
+
+    /**
+     * Writes already generated markup, for example a fragment produced by another writer, as the content of the
+     * current element. The markup is written as is, without any escaping.
+     *
+     * @param markup the markup to write, {@code null} is ignored
+     * @return this writer, for chaining
+     * @throws IOException if writing to the underlying writer fails
+     */
+    public StreamingHtmlWriter markup(String markup) throws IOException
+    {
+        if (markup == null || markup.isEmpty()) {
+            return this;
+        }
+        closeStartTag();
+        this.out.write(markup);
+        return this;
+    }
+
+    /**
+     * Closes the current element, using a self-closing tag if no content was written for it.
+     *
+     * @return this writer, for chaining
+     * @throws IOException if writing to the underlying writer fails
+     */
+    public StreamingHtmlWriter endElement() throws IOException
+    {
+        String name = this.openElements.pop();
+        if (this.startTagOpen) {
+            this.out.write("/>");
+            this.startTagOpen = false;
+        } else {
+            this.out.write("</");
+            this.out.write(name);
+            this.out.write(GT);
+        }
+        return this;
+    }
+
+    /**
+     * Writes a complete element containing only the given text.
+     *
+     * @param name the name of the element
+     * @param cssClass the value of the {@code class} attribute, or {@code null} if no such attribute is needed
+     * @param text the text content of the element
+     * @return this writer, for chaining
+     * @throws IOException if writing to the underlying writer fails
+     */
+    public StreamingHtmlWriter textElement(String name, String cssClass, String text) throws IOException
+    {
+        startElement(name);
+        if (cssClass != null) {
+            attribute("class", cssClass);
+        }
+        return text(text).endElement();
+    }
+
+    /**
+     * Closes all the elements that are still open and flushes the underlying writer.
+     *
+     * @throws IOException if writing to the underlying writer fails
+     */
+    public void flush() throws IOException
+    {
+        while (!this.openElements.isEmpty()) {
+            endElement();
+        }
+        this.out.flush();
+    }
+
+    private void closeStartTag() throws IOException
+    {
+        if (this.startTagOpen) {
+            this.out.write(GT);
+            this.startTagOpen = false;
+        }
+    }
+
+    @SuppressWarnings("CyclomaticComplexity")
+    private void writeEscaped(String value, boolean inAttribute) throws IOException
+    {
+        if (value == null) {
+            return;
+        }
+        int last = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String replacement;
+            if (c == '&') {
+                replacement = "&amp;";
+            } else if (c == LT) {
+                replacement = "&lt;";
+            } else if (c == GT) {
+                replacement = "&gt;";
+            } else if (c == '"' && inAttribute) {
+                replacement = "&quot;";
+            } else if (c < 0x20 && (inAttribute || (c != '\n' && c != '\t'))) {
+                replacement = "&#" + (int) c + ';';
+            } else {
+                continue;
+            }
+            this.out.write(value, last, i - last);
+            this.out.write(replacement);
+            last = i + 1;
+        }
+        this.out.write(value, last, value.length() - last);
+    }
+}
@@ -17,38 +17,32 @@
 import org.xwiki.security.authorization.AuthorizationManager;
 import org.xwiki.security.authorization.Right;
 
+import java.io.IOException;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.StringUtils;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 
 import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
 
 /**
- * Class for generating an HTML table.
+ * Class for generating an HTML table. The markup is streamed directly to a {@link Writer} as it is generated.
  *
  * @version $Id$
  * @since 1.3
@@ -71,17 +65,45 @@
     private static final String FEATURES = "features";
     private static final String NONSTANDARD_FEATURES = "nonstandard_features";
 
+    /**
+     * Registry of the fields displayed with a dedicated cell renderer. Fields which are not listed here are displayed
+     * as simple text. New column types are added by defining a {@link ColumnType} and registering fields for it.
+     */
+    private static final Map<String, ColumnType> COLUMN_TYPES;
+
+    static {
+        Map<String, ColumnType> types = new HashMap<>();
+        types.put(ID, ColumnType.ID);
+        types.put("first_name", ColumnType.NAME);
+        types.put("last_name", ColumnType.NAME);
+        types.put("reporter", ColumnType.REPORTER);
+        types.put("date", ColumnType.DATE);
+        types.put("last_modification_date", ColumnType.DATE);
+        types.put(DISORDERS, ColumnType.VOCABULARY);
+        types.put(FEATURES, ColumnType.VOCABULARY);
+        COLUMN_TYPES = Collections.unmodifiableMap(types);
+    }
+
     protected Vocabulary omimService;
     protected Vocabulary hpoService;
     protected XWikiContext xWikiContext;
     protected AuthorizationManager authorizationManager;
+    protected DocumentRightsChecker rightsChecker;
+    protected VocabularyTermCache termCache;
+
+    protected TableRowExecutor rowExecutor;
 
-    private Document document;
-    private final ArrayList<String> selectedFields;
-    private final JSONObject translatedLabels;
-    private final JSONObject tableHeaders;
+    private final FamilyTableConfiguration configuration;
+    private final List<String> selectedFields;
+    private final CellRenderer[] cellRenderers;
     private final List<Patient> members;
 
+    /** Documents linked from ID and reporter cells, indexed by patient identifier and reporter name. */
+    private Map<String, DocumentReference> linkTargets;
+
+    /** View URLs already generated for linked documents, so that repeated reporters are resolved only once. */
+    private final Map<DocumentReference, String> linkUrls = new ConcurrentHashMap<>();
+
     private final Family family;
 
     /**
@@ -93,41 +115,55 @@
      * @param hpoService - the hpo vocabulary ontology service.
      * @param xWikiContext - XWiki context object.
      * @param authorizationManager - the authorization manager for checking access level.
-     * @throws Exception if the family table configuration is out of sync with current patient data representations or
-     *                      if there is an error in building the dom Document.
+     * @throws Exception if the family table configuration is out of sync with current patient data representations.
      */
     public TableGenerator(Family family, JSONObject config, Vocabulary omimService, Vocabulary hpoService,
         XWikiContext xWikiContext, AuthorizationManager authorizationManager)
         throws Exception
+    {
+        this(family, FamilyTableConfiguration.fromJSON(config, null), omimService, hpoService, null, xWikiContext,
+            (DocumentRightsChecker) null);
+        this.authorizationManager = authorizationManager;
+    }
+
+    /**
+     * Constructor for this class, using an already compiled table configuration.
+     *
+     * @param family - the data object the table gets populated with.
+     * @param configuration - the compiled table configuration.
+     * @param omimService - the omim vocabulary ontology service.
+     * @param hpoService - the hpo vocabulary ontology service.
+     * @param termCache - the shared vocabulary term cache, may be null to always query the vocabularies.
+     * @param xWikiContext - XWiki context object.
+     * @param rightsChecker - the bulk rights checker for checking access level on all members at once.
+     */
+    public TableGenerator(Family family, FamilyTableConfiguration configuration, Vocabulary omimService,
+        Vocabulary hpoService, VocabularyTermCache termCache, XWikiContext xWikiContext,
+        DocumentRightsChecker rightsChecker)
     {
         this.family = family;
         this.omimService = omimService;
         this.hpoService = hpoService;
+        this.termCache = termCache;
         this.xWikiContext = xWikiContext;
-        this.authorizationManager = authorizationManager;
+        this.rightsChecker = rightsChecker;
 
         this.members = this.family.getMembers();
 
-        try {
-            this.selectedFields = new ArrayList<>();
-            this.translatedLabels = config.getJSONObject("translatedLabels");
-            this.tableHeaders = config.getJSONObject("labels");
-
-            JSONArray order = config.getJSONArray("order");
-            for (int i = 0; i < order.length(); i++) {
-                this.selectedFields.add(order.getString(i));
-            }
-        } catch (JSONException e) {
-            throw new Exception("Error retrieving table headers for the table of family members", e);
-        }
+        this.configuration = configuration;
+        this.selectedFields = configuration.getSelectedFields();
+        this.cellRenderers = compileCellRenderers();
+    }
 
-        try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            this.document = builder.newDocument();
-        } catch (ParserConfigurationException e) {
-            throw new Exception("Error generating table of family members", e);
-        }
+    /**
+     * Sets the executor used for building member rows concurrently. Rows are built one after another unless an
+     * executor is set and {@link TableRowExecutor#isEnabled() enabled}.
+     *
+     * @param rowExecutor - the row executor, may be null
+     */
+    public void setRowExecutor(TableRowExecutor rowExecutor)
+    {
+        this.rowExecutor = rowExecutor;
     }
 
     /**
@@ -142,22 +178,149 @@ public String getHtml() throws Exception
             return null;
         }
 
-        Element table = this.document.createElement("table");
-        table.setAttribute(ID, "family-members-table");
-        this.document.appendChild(table);
+        StringWriter writer = new StringWriter();
+        writeHtml(writer);
+        return writer.toString();
+    }
 
-        table.appendChild(getTableHeaderRow());
+    /**
+     * Writes the HTML content for the table to the given writer, without building the whole table in memory first.
+     * Nothing is written if the table configuration doesn't select any field.
+     *
+     * @param writer the writer where the table is written; it is flushed, but not closed
+     * @return {@code true} if a table was written, {@code false} if there is nothing to display
+     * @throws Exception if there is an error in generating or writing the table HTML content.
+     */
+    public boolean writeHtml(Writer writer) throws Exception
+    {
+        if (this.selectedFields.isEmpty()) {
+            return false;
+        }
+
+        try {
+            StreamingHtmlWriter html = new StreamingHtmlWriter(writer);
+            html.startElement("table").attribute(ID, "family-members-table");
+
+            writeTableHeaderRow(html);
+
+            this.linkTargets = indexLinkTargets();
+            Set<DocumentReference> viewableMembers = getViewableMembers();
+            if (this.rowExecutor != null && this.rowExecutor.isEnabled()) {
+                writeRowsInParallel(html, viewableMembers);
+            } else {
+                for (Patient member : this.members) {
+                    boolean viewable = viewableMembers.contains(member.getDocumentReference());
+                    writeRow(html, member.toJSON(), true, viewable);
+                }
+                for (JSONObject member : getUnlinkedMembersFromPedigree()) {
+                    writeRow(html, member, false, true);
+                }
+            }
+
+            html.endElement();
+            html.flush();
+        } catch (IOException e) {
+            throw new Exception("Error writing HTML content for the table of family members", e);
+        }
+        return true;
+    }
+
+    /**
+     * Builds each member row into a separate fragment on the row executor, and then writes the fragments in the
+     * usual row order. Link URLs are resolved beforehand, so that the rows only read shared state.
+     *
+     * @param html the writer for the table
+     * @param viewableMembers the member documents the current user can view
+     * @throws Exception if building or writing a row fails
+     */
+    private void writeRowsInParallel(StreamingHtmlWriter html, Set<DocumentReference> viewableMembers)
+        throws Exception
+    {
+        for (DocumentReference target : this.linkTargets.values()) {
+            getXWikiURLForLinkField(target);
+        }
 
+        List<Callable<String>> rows = new ArrayList<>();
         for (Patient member : this.members) {
-            boolean viewable = this.authorizationManager.hasAccess(Right.VIEW, this.xWikiContext.getUserReference(),
-                member.getDocumentReference());
-            table.appendChild(getRow(member.toJSON(), true, viewable));
+            rows.add(new RowTask(member, null, viewableMembers.contains(member.getDocumentReference())));
         }
         for (JSONObject member : getUnlinkedMembersFromPedigree()) {
-            table.appendChild(getRow(member, false, true));
+            rows.add(new RowTask(null, member, true));
         }
+        for (String row : this.rowExecutor.invokeAll(rows)) {
+            html.markup(row);
+        }
+    }
 
-        return getDocumentHtml();
+    /**
+     * Returns a key identifying the table that {@link #writeHtml(Writer)} would produce. The key combines the wiki, the
+     * table configuration version, the family document version (which also covers the pedigree, stored in the same
+     * document), the version of each member document and which members the current user can view.
+     *
+     * @param familyVersion the version of the family document
+     * @return the rendering key, or {@code null} if the table must not be cached
+     */
+    public String getCacheKey(String familyVersion)
+    {
+        if (this.configuration.getVersion() == null || familyVersion == null) {
+            return null;
+        }
+
+        StringBuilder key = new StringBuilder();
+        key.append(this.xWikiContext.getWikiId()).append('|').append(this.configuration.getVersion());
+        key.append('|').append(this.family.getDocumentReference()).append('@').append(familyVersion);
+        try {
+            Set<DocumentReference> viewable = getViewableMembers();
+            for (Patient member : this.members) {
+                DocumentReference reference = member.getDocumentReference();
+                key.append('|').append(reference).append('@');
+                key.append(this.xWikiContext.getWiki().getDocument(reference, this.xWikiContext).getVersion());
+                key.append(viewable.contains(reference) ? '+' : '-');
+            }
+        } catch (XWikiException e) {
+            return null;
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the documents the table is rendered from: the family document and the documents of its members.
+     *
+     * @return a list of document references
+     */
+    public List<DocumentReference> getCacheDependencies()
+    {
+        List<DocumentReference> dependencies = new ArrayList<>(this.members.size() + 1);
+        dependencies.add(this.family.getDocumentReference());
+        for (Patient member : this.members) {
+            dependencies.add(member.getDocumentReference());
+        }
+        return dependencies;
+    }
+
+    /**
+     * Returns the documents of the family members that the current user is allowed to view, checked in one batch.
+     *
+     * @return the set of viewable member documents
+     */
+    private Set<DocumentReference> getViewableMembers()
+    {
+        DocumentReference user = this.xWikiContext.getUserReference();
+        List<DocumentReference> memberDocuments = new ArrayList<>(this.members.size());
+        for (Patient member : this.members) {
+            memberDocuments.add(member.getDocumentReference());
+        }
+
+        if (this.rightsChecker != null) {
+            return this.rightsChecker.filterAccessible(Right.VIEW, user, memberDocuments);
+        }
+        Set<DocumentReference> viewable = new HashSet<>();
+        for (DocumentReference memberDocument : memberDocuments) {
+            if (this.authorizationManager.hasAccess(Right.VIEW, user, memberDocument)) {
+                viewable.add(memberDocument);
+            }
+        }
+        return viewable;
     }
 
     private List<JSONObject> getUnlinkedMembersFromPedigree()
@@ -180,144 +343,131 @@ private List<JSONObject> getUnlinkedMembersFromPedigree()
         return nonPatientMembers;
     }
 
-    private Element getTableHeaderRow()
+    /**
+     * Builds one cell renderer per selected field, in display order, so that rows don't have to look up the type of
+     * each column again.
+     *
+     * @return the renderers for the table columns
+     */
+    private CellRenderer[] compileCellRenderers()
     {
-        Element tableHeaderEl = this.document.createElement("thead");
-
-        for (String selectedField : this.selectedFields) {
-            Element cellEl = this.document.createElement("th");
-            cellEl.appendChild(this.document.createTextNode(this.tableHeaders.getString(selectedField)));
-            tableHeaderEl.appendChild(cellEl);
+        CellRenderer[] renderers = new CellRenderer[this.selectedFields.size()];
+        for (int i = 0; i < renderers.length; i++) {
+            String field = this.selectedFields.get(i);
+            ColumnType type = COLUMN_TYPES.get(field);
+            renderers[i] = (type == null ? ColumnType.SIMPLE : type).createRenderer(this, field);
         }
-        return tableHeaderEl;
+        return renderers;
     }
 
-    private Element getRow(final JSONObject data, boolean isPatient, boolean viewable)
+    private void writeTableHeaderRow(StreamingHtmlWriter html) throws IOException
     {
-        Element tableRowEl = this.document.createElement("tr");
-        tableRowEl.setAttribute(CSS_CLASS, "family-member-row");
+        html.startElement("thead");
 
-        if (!isPatient && (data.optJSONObject(PROP) == null || data.optJSONObject(PROP).length() == 0)) {
-            return tableRowEl;
-        }
-
-        JSONObject dataInternal = data;
-
-        if (!isPatient) {
-            dataInternal = this.resolvePedigreeMemberOmimTerms(data);
-        }
         for (String selectedField : this.selectedFields) {
-            tableRowEl.appendChild(getRowColCell(selectedField, dataInternal, isPatient, viewable));
+            html.textElement("th", null, this.configuration.getTableHeader(selectedField));
         }
-
-        return tableRowEl;
+        html.endElement();
     }
 
-    private Element getRowColCell(String field, JSONObject data, boolean isPatient, boolean viewable)
+    private void writeRow(StreamingHtmlWriter html, final JSONObject data, boolean isPatient, boolean viewable)
+        throws IOException
     {
-        Element cellEl = this.document.createElement("td");
+        html.startElement("tr").attribute(CSS_CLASS, "family-member-row");
+
+        if (!isPatient && (data.optJSONObject(PROP) == null || data.optJSONObject(PROP).length() == 0)) {
+            html.endElement();
+            return;
+        }
 
         // TODO: Change when upgraded to 1.3m4 which will have a 'pedigreeId' in the JSON for a pedigree member
         JSONObject member = data;
-        String nodeId = field;
+        String nodeId = null;
         if (!isPatient) {
+            member = this.resolvePedigreeMemberOmimTerms(data).optJSONObject(PROP);
             nodeId = data.optString(ID);
-            member = data.optJSONObject(PROP);
         }
 
-        if (isId(field)) {
-            setIdCell(cellEl, nodeId, member, isPatient);
-
-        } else if (viewable) {
-            if (isName(field)) {
-                setNameCell(cellEl, field, member, isPatient);
-
-            } else if (isReporter(field)) {
-                setReporterCell(cellEl, field, member, isPatient);
-
-            } else if (isDate(field)) {
-                setDateCell(cellEl, field, member, isPatient);
-
-            } else if (isVocabulary(field)) {
-                setVocabularyCell(cellEl, field, member, isPatient);
-
-            } else {
-                setSimpleCell(cellEl, field, member, isPatient);
+        for (CellRenderer renderer : this.cellRenderers) {
+            html.startElement("td");
+            if (viewable || !renderer.isRestricted()) {
+                renderer.write(html, member, nodeId, isPatient);
             }
+            html.endElement();
         }
-        return cellEl;
+
+        html.endElement();
     }
 
-    private void setSimpleCell(Element cellEl, String field, JSONObject member, boolean isPatient)
+    private void writeSimpleCell(StreamingHtmlWriter html, String field, JSONObject member, boolean isPatient)
+        throws IOException
     {
-        cellEl.setAttribute(CSS_CLASS, field);
+        html.attribute(CSS_CLASS, field);
         String value = isPatient ? member.optString(field) : NOT_AVAILABLE_TAG;
-        cellEl.appendChild(this.document.createTextNode(value));
+        html.text(value);
     }
 
-    private void setIdCell(Element cellEl, String field, JSONObject member, boolean isPatient)
+    private void writeIdCell(StreamingHtmlWriter html, String field, JSONObject member, boolean isPatient)
+        throws IOException
     {
-        cellEl.setAttribute(CSS_CLASS, field);
+        html.attribute(CSS_CLASS, field);
         if (isPatient) {
             String id = member.optString(field);
-            cellEl.appendChild(getLinkElement(getXWikiURLForLinkField(id), IDENTIFIER, id, false));
+            writeLink(html, getXWikiURLForLinkField(id), IDENTIFIER, id, false);
         } else {
-            Element idEl = this.document.createElement(SPAN);
-            idEl.setAttribute(CSS_CLASS, IDENTIFIER);
-            idEl.setAttribute("style", "display: none");
-            idEl.appendChild(this.document.createTextNode(field));
-            cellEl.appendChild(this.document.createTextNode(NOT_AVAILABLE_TAG));
-            cellEl.appendChild(idEl);
+            html.text(NOT_AVAILABLE_TAG);
+            html.startElement(SPAN).attribute(CSS_CLASS, IDENTIFIER).attribute("style", "display: none");
+            html.text(field).endElement();
         }
     }
 
-    private void setNameCell(Element cellEl, String field, JSONObject member, boolean isPatient)
+    private void writeNameCell(StreamingHtmlWriter html, String field, JSONObject member, boolean isPatient)
+        throws IOException
     {
-        cellEl.setAttribute(CSS_CLASS, field);
+        html.attribute(CSS_CLASS, field);
         if (isPatient) {
             JSONObject nameObj = member.optJSONObject("patient_name");
             if (nameObj != null) {
-                cellEl.appendChild(this.document.createTextNode(nameObj.optString(field)));
+                html.text(nameObj.optString(field));
             }
         } else {
-            cellEl.appendChild(this.document.createTextNode(member.optString(this.translatedLabels.optString(field))));
+            html.text(member.optString(this.configuration.getTranslatedLabel(field)));
         }
     }
 
-    private void setDateCell(Element cellEl, String field, JSONObject member, boolean isPatient)
+    private void writeDateCell(StreamingHtmlWriter html, String field, JSONObject member, boolean isPatient)
+        throws IOException
     {
-        cellEl.setAttribute(CSS_CLASS, field);
         if (isPatient) {
+            html.attribute(CSS_CLASS, field);
             SimpleDateFormat dateFormatter = new SimpleDateFormat(DATE_FORMAT);
             try {
                 Date date = dateFormatter.parse(member.getString(field));
-                cellEl.appendChild(this.document.createTextNode(dateFormatter.format(date)));
+                html.text(dateFormatter.format(date));
             } catch (ParseException e) {
                 // Nothing
             }
         } else {
-            setSimpleCell(cellEl, "", member, false);
+            writeSimpleCell(html, "", member, false);
         }
     }
 
-    private void setReporterCell(Element cellEl, String field, JSONObject member, boolean isPatient)
+    private void writeReporterCell(StreamingHtmlWriter html, String field, JSONObject member, boolean isPatient)
+        throws IOException
     {
-        cellEl.setAttribute(CSS_CLASS, field);
         if (isPatient) {
+            html.attribute(CSS_CLASS, field);
             String username = member.optString(field);
-            Element reporterEl = getLinkElement(getXWikiURLForLinkField(username), "", username, false);
-            Element icon = this.document.createElement("i");
-            icon.setAttribute(CSS_CLASS, "fa fa-user");
-            cellEl.appendChild(icon);
-            cellEl.appendChild(reporterEl);
+            html.startElement("i").attribute(CSS_CLASS, "fa fa-user").endElement();
+            writeLink(html, getXWikiURLForLinkField(username), "", username, false);
         } else {
-            setSimpleCell(cellEl, "", member, isPatient);
+            writeSimpleCell(html, "", member, isPatient);
         }
     }
 
-    private void setVocabularyCell(Element cellEl, String field, JSONObject member, boolean isPatient)
+    private void writeVocabularyCell(StreamingHtmlWriter html, String field, JSONObject member, boolean isPatient)
+        throws IOException
     {
-        cellEl.setAttribute(CSS_CLASS, field);
         JSONArray vocabArray;
         if (isPatient) {
             vocabArray = member.optJSONArray(field);
@@ -326,14 +476,48 @@ private void setVocabularyCell(Element cellEl, String field, JSONObject member,
             } else if (FEATURES.equals(field)) {
                 vocabArray = merge(vocabArray, member.optJSONArray(NONSTANDARD_FEATURES));
             }
-            appendVocabularyTerms(cellEl, vocabArray, false);
         } else {
-            vocabArray = member.optJSONArray(this.translatedLabels.optString(field));
+            vocabArray = member.optJSONArray(this.configuration.getTranslatedLabel(field));
             if (FEATURES.equals(field)) {
                 vocabArray = merge(vocabArray, member.optJSONArray(NONSTANDARD_FEATURES), LABEL, LABEL);
             }
-            appendVocabularyTerms(cellEl, vocabArray, false);
         }
+        html.attribute(CSS_CLASS, getVocabularyCellClass(field, vocabArray));
+        writeVocabularyTerms(html, vocabArray, false);
+    }
+
+    /**
+     * Returns the CSS class of a vocabulary cell. The cell takes the info type of the last vocabulary term object
+     * it lists, or the name of the field if there is no such term.
+     *
+     * @param field the name of the field displayed in the cell
+     * @param vocabArray the terms displayed in the cell, may be null
+     * @return the CSS class to use for the cell
+     */
+    private String getVocabularyCellClass(String field, JSONArray vocabArray)
+    {
+        String cssClass = field;
+        if (vocabArray != null) {
+            for (Object obj : vocabArray) {
+                if (obj instanceof JSONObject) {
+                    cssClass = getInfoType(((JSONObject) obj).optString(ID));
+                }
+            }
+        }
+        return cssClass;
+    }
+
+    private String getInfoType(String termId)
+    {
+        String infoType = "";
+        if (termId.startsWith("HP:")) {
+            infoType = "phenotype-info";
+        } else if (termId.startsWith("ORDO:")) {
+            infoType = "ordo-disease-info";
+        } else if (termId.startsWith("MIM:")) {
+            infoType = "omim-disease-info";
+        }
+        return infoType;
     }
 
     /**
@@ -403,9 +587,10 @@ private void transferUniqueVocabObject(JSONArray to, JSONArray from, Set<String>
 
 
     @SuppressWarnings("CyclomaticComplexity")
-    private void appendVocabularyTerms(Element cellEl, JSONArray vocabArray, boolean includeHyperlink)
+    private void writeVocabularyTerms(StreamingHtmlWriter html, JSONArray vocabArray, boolean includeHyperlink)
+        throws IOException
     {
-        if (cellEl == null || vocabArray == null) {
+        if (vocabArray == null) {
             return;
         }
 
@@ -422,46 +607,32 @@ private void appendVocabularyTerms(Element cellEl, JSONArray vocabArray, boolean
                 termId = vocabObj.optString(ID);
             }
 
-            Element listNode = this.document.createElement("ul");
+            html.startElement("ul");
 
             if (termId != null) {
-                String infoType = "";
-                if (termId.startsWith("HP:")) {
-                    infoType = "phenotype-info";
-                } else if (termId.startsWith("ORDO:")) {
-                    infoType = "ordo-disease-info";
-                } else if (termId.startsWith("MIM:")) {
-                    infoType = "omim-disease-info";
-                }
-
-                cellEl.setAttribute(CSS_CLASS, infoType);
+                html.textElement(SPAN, "vocabLabel", val);
 
-                Element label = this.document.createElement(SPAN);
-                label.setAttribute(CSS_CLASS, "vocabLabel");
-                label.appendChild(this.document.createTextNode(val));
-                listNode.appendChild(label);
-
-                Element helpButton = this.document.createElement(SPAN);
+                html.startElement(SPAN);
                 if (StringUtils.isEmpty(termId)) {
-                    helpButton.setAttribute(CSS_CLASS, "fa fa-exclamation-triangle");
-                    helpButton.setAttribute(TITLE, "This is not a standardized phenotype");
+                    html.attribute(CSS_CLASS, "fa fa-exclamation-triangle");
+                    html.attribute(TITLE, "This is not a standardized phenotype");
                 } else {
-                    helpButton.setAttribute(CSS_CLASS, "fa fa-info-circle xHelpButton " + infoType);
-                    helpButton.setAttribute(TITLE, termId);
+                    html.attribute(CSS_CLASS, "fa fa-info-circle xHelpButton " + getInfoType(termId));
+                    html.attribute(TITLE, termId);
                 }
-                listNode.appendChild(helpButton);
+                html.endElement();
             } else {
-                listNode.appendChild(this.document.createTextNode(val));
+                html.text(val);
             }
-            cellEl.appendChild(listNode);
+            html.endElement();
         }
     }
 
-    private void appendHyperlink(Element listNode, String termId)
+    private void writeHyperlink(StreamingHtmlWriter html, String termId) throws IOException
     {
         String link = termId.startsWith("MIM:") ? "http://www.omim.org/entry/" + termId.substring(4)
             : "http://compbio.charite.de/hpoweb/showterm?id=" + termId;
-        listNode.appendChild(getLinkElement(link, "vocabLink", "[" + termId + "]", true));
+        writeLink(html, link, "vocabLink", "[" + termId + "]", true);
     }
 
     /**
@@ -479,13 +650,18 @@ private JSONObject resolvePedigreeMemberOmimTerms(JSONObject familyMember)
         JSONObject prop = familyMember.getJSONObject(PROP);
         JSONArray omimTermIds = prop.optJSONArray(DISORDERS);
         if (omimTermIds != null) {
-            JSONArray omimTermObjs = new JSONArray();
+            List<String> ids = new ArrayList<>(omimTermIds.length());
             for (int i = 0; i < omimTermIds.length(); i++) {
                 if (omimTermIds.get(i) instanceof String) {
-                    VocabularyTerm omimTerm = this.omimService.getTerm(omimTermIds.getString(i));
-                    if (omimTerm != null) {
-                        omimTermObjs.put(omimTerm.toJSON());
-                    }
+                    ids.add(omimTermIds.getString(i));
+                }
+            }
+            Map<String, VocabularyTerm> omimTerms = getTerms(this.omimService, ids);
+            JSONArray omimTermObjs = new JSONArray();
+            for (String id : ids) {
+                VocabularyTerm omimTerm = omimTerms.get(id);
+                if (omimTerm != null) {
+                    omimTermObjs.put(getTermJSON(this.omimService, id, omimTerm));
                 }
             }
             prop.put(DISORDERS, omimTermObjs);
@@ -493,10 +669,37 @@ private JSONObject resolvePedigreeMemberOmimTerms(JSONObject familyMember)
         return familyMember;
     }
 
+    /**
+     * Fetches several vocabulary terms at once, through the shared term cache if available.
+     *
+     * @param vocabulary the vocabulary to look into
+     * @param ids the term identifiers
+     * @return a map from the requested identifiers to the found terms
+     */
+    private Map<String, VocabularyTerm> getTerms(Vocabulary vocabulary, List<String> ids)
+    {
+        if (this.termCache != null) {
+            return this.termCache.getTerms(vocabulary, ids);
+        }
+        Map<String, VocabularyTerm> terms = new HashMap<>();
+        for (String id : ids) {
+            VocabularyTerm term = vocabulary.getTerm(id);
+            if (term != null) {
+                terms.put(id, term);
+            }
+        }
+        return terms;
+    }
+
+    private JSONObject getTermJSON(Vocabulary vocabulary, String id, VocabularyTerm term)
+    {
+        return this.termCache != null ? this.termCache.getTermJSON(vocabulary, id) : term.toJSON();
+    }
+
     private void mapOmimSymptomsToFamilyMemberPhenotypes(JSONObject data, boolean isPatient)
     {
         try {
-            OmimToHpoMapper mapper = new OmimToHpoMapper(this.omimService, this.hpoService);
+            OmimToHpoMapper mapper = new OmimToHpoMapper(this.termCache, this.omimService, this.hpoService);
             JSONObject familyMember = data;
             if (!isPatient) {
                 familyMember = data.getJSONObject(PROP);
@@ -523,11 +726,9 @@ private JSONArray getOmimDisordersJsonArray(Map<String, List<VocabularyTerm>> om
         if (omimToHpoMap == null || omimToHpoMap.size() == 0) {
             return disordersArray;
         }
-        for (String omimKey : omimToHpoMap.keySet()) {
-            VocabularyTerm omimTerm = this.omimService.getTerm(omimKey);
-            if (omimTerm != null) {
-                disordersArray.put(omimTerm.toJSON());
-            }
+        Map<String, VocabularyTerm> omimTerms = getTerms(this.omimService, new ArrayList<>(omimToHpoMap.keySet()));
+        for (Map.Entry<String, VocabularyTerm> omimTerm : omimTerms.entrySet()) {
+            disordersArray.put(getTermJSON(this.omimService, omimTerm.getKey(), omimTerm.getValue()));
         }
         return disordersArray;
     }
@@ -585,68 +786,270 @@ private List<String> getVocabularies(JSONObject data, String field)
         return terms;
     }
 
-    private String getXWikiURLForLinkField(String identifier)
+    /**
+     * Indexes the documents that ID and reporter cells link to. When an identifier matches several members, the
+     * first member in the family wins, and a member's own ID takes precedence over its reporter's name.
+     *
+     * @return a map from patient identifiers and reporter names to the linked documents
+     */
+    private Map<String, DocumentReference> indexLinkTargets()
     {
-        DocumentReference ref = null;
-        for (Patient patient : this.family.getMembers()) {
-            if (identifier.equals(patient.getId())) {
-                ref = patient.getDocument();
-                break;
-            } else if (patient.getReporter() != null && identifier.equals(patient.getReporter().getName())) {
-                ref = patient.getReporter();
-                break;
+        Map<String, DocumentReference> targets = new HashMap<>();
+        for (Patient patient : this.members) {
+            if (patient.getId() != null && !targets.containsKey(patient.getId())) {
+                targets.put(patient.getId(), patient.getDocument());
+            }
+            DocumentReference reporter = patient.getReporter();
+            if (reporter != null && !targets.containsKey(reporter.getName())) {
+                targets.put(reporter.getName(), reporter);
             }
         }
-        String link = null;
-        if (ref != null) {
+        return targets;
+    }
+
+    private String getXWikiURLForLinkField(String identifier)
+    {
+        DocumentReference ref = this.linkTargets == null ? null : this.linkTargets.get(identifier);
+        if (ref == null) {
+            return null;
+        }
+        return getXWikiURLForLinkField(ref);
+    }
+
+    private String getXWikiURLForLinkField(DocumentReference ref)
+    {
+        String link = this.linkUrls.get(ref);
+        if (link == null) {
             link = this.xWikiContext.getWiki().getURL(ref, "view", this.xWikiContext);
+            if (link != null) {
+                this.linkUrls.put(ref, link);
+            }
         }
         return link;
     }
 
-    private Element getLinkElement(String link, String innerClass, String innerHTML, boolean isExternal)
+    private void writeLink(StreamingHtmlWriter html, String link, String innerClass, String innerHTML,
+        boolean isExternal) throws IOException
     {
         String wrapperClass = isExternal ? "wikiexternallink" : "wikilink";
-        Element linkWrapper = this.document.createElement(SPAN);
-        linkWrapper.setAttribute(CSS_CLASS, wrapperClass);
-        Element linkEl = this.document.createElement("a");
-        linkEl.setAttribute(CSS_CLASS, innerClass);
-        linkEl.setAttribute("href", link);
-        linkEl.appendChild(this.document.createTextNode(innerHTML));
-        linkWrapper.appendChild(linkEl);
-        return linkWrapper;
+        html.startElement(SPAN).attribute(CSS_CLASS, wrapperClass);
+        html.startElement("a").attribute(CSS_CLASS, innerClass).attribute("href", link);
+        html.text(innerHTML).endElement();
+        html.endElement();
     }
 
-    private String getDocumentHtml() throws Exception
+    /**
+     * Builds the markup of one row, for either a patient or a pedigree-only member.
+     */
+    private final class RowTask implements Callable<String>
     {
-        try {
-            StringWriter writer = new StringWriter();
-            StreamResult result = new StreamResult(writer);
-            TransformerFactory tf = TransformerFactory.newInstance();
-            Transformer transformer = tf.newTransformer();
-            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        private final Patient patient;
 
-            DOMSource domSource = new DOMSource(this.document);
-            transformer.transform(domSource, result);
+        private final JSONObject pedigreeMember;
 
-            return writer.toString();
-        } catch (TransformerConfigurationException e) {
-            throw new Exception("Error writing HTML content for the table of family members", e);
+        private final boolean viewable;
+
+        RowTask(Patient patient, JSONObject pedigreeMember, boolean viewable)
+        {
+            this.patient = patient;
+            this.pedigreeMember = pedigreeMember;
+            this.viewable = viewable;
+        }
+
+        @Override
+        public String call() throws Exception
+        {
+            StringWriter fragment = new StringWriter();
+            StreamingHtmlWriter html = new StreamingHtmlWriter(fragment);
+            if (this.patient != null) {
+                writeRow(html, this.patient.toJSON(), true, this.viewable);
+            } else {
+                writeRow(html, this.pedigreeMember, false, this.viewable);
+            }
+            html.flush();
+            return fragment.toString();
         }
     }
 
-    private boolean isName(String key)
-    { return "first_name".equals(key) || "last_name".equals(key); }
+    /**
+     * The kinds of columns that the table can display, each creating a specialized cell renderer.
+     */
+    private enum ColumnType
+    {
+        /** The member identifier, linking to the patient record. */
+        ID {
+            @Override
+            CellRenderer createRenderer(TableGenerator generator, String field)
+            {
+                return generator.new IdCellRenderer(field);
+            }
+        },
+        /** A first or last name. */
+        NAME {
+            @Override
+            CellRenderer createRenderer(TableGenerator generator, String field)
+            {
+                return generator.new NameCellRenderer(field);
+            }
+        },
+        /** The reporter of the patient record, linking to the user profile. */
+        REPORTER {
+            @Override
+            CellRenderer createRenderer(TableGenerator generator, String field)
+            {
+                return generator.new ReporterCellRenderer(field);
+            }
+        },
+        /** A date, displayed in the yyyy-MM-dd format. */
+        DATE {
+            @Override
+            CellRenderer createRenderer(TableGenerator generator, String field)
+            {
+                return generator.new DateCellRenderer(field);
+            }
+        },
+        /** A list of vocabulary terms. */
+        VOCABULARY {
+            @Override
+            CellRenderer createRenderer(TableGenerator generator, String field)
+            {
+                return generator.new VocabularyCellRenderer(field);
+            }
+        },
+        /** Any other value, displayed as plain text. */
+        SIMPLE {
+            @Override
+            CellRenderer createRenderer(TableGenerator generator, String field)
+            {
+                return generator.new SimpleCellRenderer(field);
+            }
+        };
 
-    private boolean isVocabulary(String key)
-    { return DISORDERS.equals(key) || FEATURES.equals(key); }
+        abstract CellRenderer createRenderer(TableGenerator generator, String field);
+    }
 
-    private boolean isDate(String key)
-    { return "date".equals(key) || "last_modification_date".equals(key); }
+    /**
+     * Writes the attributes and the content of the cell displaying one column for one family member.
+     */
+    private abstract class CellRenderer
+    {
+        protected final String field;
 
-    private boolean isId(String key)
-    { return ID.equals(key); }
+        CellRenderer(String field)
+        {
+            this.field = field;
+        }
+
+        /**
+         * Whether the content of the cell must be hidden from users who cannot view the member.
+         *
+         * @return {@code true} by default
+         */
+        boolean isRestricted()
+        {
+            return true;
+        }
+
+        /**
+         * Writes the cell content into the currently open {@code td} element.
+         *
+         * @param html the writer, positioned inside the cell's start tag
+         * @param member the member data, either the patient JSON or the pedigree node properties
+         * @param nodeId the pedigree node identifier for pedigree members, {@code null} for patients
+         * @param isPatient whether the member is a patient or a pedigree-only member
+         * @throws IOException if writing fails
+         */
+        abstract void write(StreamingHtmlWriter html, JSONObject member, String nodeId, boolean isPatient)
+            throws IOException;
+    }
+
+    private final class IdCellRenderer extends CellRenderer
+    {
+        IdCellRenderer(String field)
+        {
+            super(field);
+        }
+
+        @Override
+        boolean isRestricted()
+        {
+            return false;
+        }
 
-    private boolean isReporter(String key)
-    { return "reporter".equals(key); }
+        @Override
+        void write(StreamingHtmlWriter html, JSONObject member, String nodeId, boolean isPatient) throws IOException
+        {
+            writeIdCell(html, isPatient ? this.field : nodeId, member, isPatient);
+        }
+    }
+
+    private final class NameCellRenderer extends CellRenderer
+    {
+        NameCellRenderer(String field)
+        {
+            super(field);
+        }
+
+        @Override
+        void write(StreamingHtmlWriter html, JSONObject member, String nodeId, boolean isPatient) throws IOException
+        {
+            writeNameCell(html, this.field, member, isPatient);
+        }
+    }
+
+    private final class ReporterCellRenderer extends CellRenderer
+    {
+        ReporterCellRenderer(String field)
+        {
+            super(field);
+        }
+
+        @Override
+        void write(StreamingHtmlWriter html, JSONObject member, String nodeId, boolean isPatient) throws IOException
+        {
+            writeReporterCell(html, this.field, member, isPatient);
+        }
+    }
+
+    private final class DateCellRenderer extends CellRenderer
+    {
+        DateCellRenderer(String field)
+        {
+            super(field);
+        }
+
+        @Override
+        void write(StreamingHtmlWriter html, JSONObject member, String nodeId, boolean isPatient) throws IOException
+        {
+            writeDateCell(html, this.field, member, isPatient);
+        }
+    }
+
+    private final class VocabularyCellRenderer extends CellRenderer
+    {
+        VocabularyCellRenderer(String field)
+        {
+            super(field);
+        }
+
+        @Override
+        void write(StreamingHtmlWriter html, JSONObject member, String nodeId, boolean isPatient) throws IOException
+        {
+            writeVocabularyCell(html, this.field, member, isPatient);
+        }
+    }
+
+    private final class SimpleCellRenderer extends CellRenderer
+    {
+        SimpleCellRenderer(String field)
+        {
+            super(field);
+        }
+
+        @Override
+        void write(StreamingHtmlWriter html, JSONObject member, String nodeId, boolean isPatient) throws IOException
+        {
+            writeSimpleCell(html, this.field, member, isPatient);
+        }
+    }
 }
@@ -0,0 +1,41 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familydashboard.internal;
+
+import org.xwiki.component.annotation.Role;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Bounded executor used to build the rows of family tables concurrently. Each task runs in a new execution context
+ * with the user, wiki and document of the thread submitting it, so that rights are checked just like in the rendering
+ * thread. Parallel rendering is opt-in, and disabled unless enabled in {@code xwiki.properties}.
+ *
+ * @version $Id$
+ */
+@Role
+public interface TableRowExecutor
+{
+    /**
+     * Whether rows should be built concurrently.
+     *
+     * @return {@code true} if parallel row rendering is enabled in the configuration
+     */
+    boolean isEnabled();
+
+    /**
+     * Runs the given tasks, concurrently if possible, and waits for all of them to finish.
+     *
+     * @param <T> the type of the task results
+     * @param tasks the tasks to run
+     * @return the results of the tasks, in the same order as the tasks
+     * @throws Exception if any of the tasks failed, or if the current thread was interrupted while waiting
+     */
+    <T> List<T> invokeAll(List<Callable<T>> tasks) throws Exception;
+}
@@ -0,0 +1,74 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familydashboard.internal;
+
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.component.annotation.Role;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+/**
+ * Bounded cache of vocabulary terms shared by the family dashboard, sparing a vocabulary round trip for the OMIM and
+ * HPO terms that come up again and again across families. Terms which don't exist are remembered as well.
+ *
+ * @version $Id$
+ */
+@Role
+public interface VocabularyTermCache
+{
+    /**
+     * Returns a term from the given vocabulary.
+     *
+     * @param vocabulary the vocabulary to look into
+     * @param id the term identifier, as accepted by {@link Vocabulary#getTerm(String)}
+     * @return the term, or {@code null} if the vocabulary doesn't contain it
+     */
+    VocabularyTerm getTerm(Vocabulary vocabulary, String id);
+
+    /**
+     * Returns several terms from the given vocabulary, fetching all the terms that are not cached in one request.
+     *
+     * @param vocabulary the vocabulary to look into
+     * @param ids the term identifiers
+     * @return a map from the requested identifiers to the found terms, in request order; identifiers that don't
+     *         match any term are missing from the map
+     */
+    Map<String, VocabularyTerm> getTerms(Vocabulary vocabulary, Collection<String> ids);
+
+    /**
+     * Returns the JSON representation of a term, computed only once per cached term.
+     *
+     * @param vocabulary the vocabulary to look into
+     * @param id the term identifier
+     * @return a new JSON object whose top-level keys can be modified freely, but whose nested values are shared and
+     *         must not be modified; {@code null} if the vocabulary doesn't contain the term
+     */
+    JSONObject getTermJSON(Vocabulary vocabulary, String id);
+
+    /**
+     * Returns the number of lookups served from the cache since startup.
+     *
+     * @return the hit count
+     */
+    long getHitCount();
+
+    /**
+     * Returns the number of lookups which needed a vocabulary query since startup.
+     *
+     * @return the miss count
+     */
+    long getMissCount();
+
+    /** Empties the cache, for example after a vocabulary was reindexed. */
+    void clear();
+}
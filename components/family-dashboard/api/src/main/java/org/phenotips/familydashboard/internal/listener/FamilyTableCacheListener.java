@@ -0,0 +1,85 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familydashboard.internal.listener;
+
+import org.phenotips.familydashboard.internal.FamilyTableCache;
+
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Evicts cached tables of family members rendered from a document that was just updated or deleted. Changes to
+ * documents holding access rights or group memberships evict all cached tables.
+ *
+ * @version $Id$
+ */
+@Component
+@Named("familyTableCacheListener")
+@Singleton
+public class FamilyTableCacheListener extends AbstractEventListener
+{
+    private static final EntityReference XWIKI_SPACE = new EntityReference("XWiki", EntityType.SPACE);
+
+    /** XClasses whose objects affect who can view which patient records. */
+    private static final List<EntityReference> RIGHTS_CLASSES = Arrays.asList(
+        new EntityReference("XWikiRights", EntityType.DOCUMENT, XWIKI_SPACE),
+        new EntityReference("XWikiGlobalRights", EntityType.DOCUMENT, XWIKI_SPACE),
+        new EntityReference("XWikiGroups", EntityType.DOCUMENT, XWIKI_SPACE));
+
+    @Inject
+    private FamilyTableCache cache;
+
+    /** Default constructor, sets up the listener name and the list of events to subscribe to. */
+    public FamilyTableCacheListener()
+    {
+        super("familyTableCacheListener", new DocumentUpdatedEvent(), new DocumentDeletedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        XWikiDocument document = (XWikiDocument) source;
+        if (document == null) {
+            return;
+        }
+
+        if (holdsRights(document) || holdsRights(document.getOriginalDocument())) {
+            this.cache.invalidateAll();
+        } else {
+            this.cache.invalidate(document.getDocumentReference());
+        }
+    }
+
+    private boolean holdsRights(XWikiDocument document)
+    {
+        if (document == null) {
+            return false;
+        }
+        for (EntityReference rightsClass : RIGHTS_CLASSES) {
+            List<?> objects = document.getXObjects(rightsClass);
+            if (objects != null && !objects.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familydashboard.internal.listener;
+
+import org.phenotips.familydashboard.internal.FamilyTableConfigurationSource;
+
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Drops the cached family table configuration of a wiki whenever its {@code PhenoTips.FamilySheetCode} document is
+ * created, updated or deleted.
+ *
+ * @version $Id$
+ */
+@Component
+@Named("familyTableConfigurationListener")
+@Singleton
+public class FamilyTableConfigurationListener extends AbstractEventListener
+{
+    @Inject
+    private FamilyTableConfigurationSource configurationSource;
+
+    /** Default constructor, sets up the listener name and the list of events to subscribe to. */
+    public FamilyTableConfigurationListener()
+    {
+        super("familyTableConfigurationListener", new DocumentCreatedEvent(), new DocumentUpdatedEvent(),
+            new DocumentDeletedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        XWikiDocument document = (XWikiDocument) source;
+        if (document == null) {
+            return;
+        }
+
+        DocumentReference reference = document.getDocumentReference();
+        if (FamilyTableConfigurationSource.CONFIGURATION_DOCUMENT.equals(reference.getName())
+            && FamilyTableConfigurationSource.CONFIGURATION_SPACE.equals(reference.getLastSpaceReference().getName())) {
+            this.configurationSource.invalidate(reference.getWikiReference().getName());
+        }
+    }
+}
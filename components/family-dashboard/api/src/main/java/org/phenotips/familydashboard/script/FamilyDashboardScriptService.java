@@ -7,15 +7,20 @@
  */
 package org.phenotips.familydashboard.script;
 
+import org.phenotips.familydashboard.internal.DocumentRightsChecker;
+import org.phenotips.familydashboard.internal.FamilyTableCache;
+import org.phenotips.familydashboard.internal.FamilyTableConfigurationSource;
 import org.phenotips.familydashboard.internal.TableGenerator;
+import org.phenotips.familydashboard.internal.TableRowExecutor;
+import org.phenotips.familydashboard.internal.VocabularyTermCache;
 import org.phenotips.studies.family.internal.PhenotipsFamily;
 import org.phenotips.vocabulary.Vocabulary;
 
-import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.component.annotation.Component;
-import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.script.service.ScriptService;
-import org.xwiki.security.authorization.AuthorizationManager;
+
+import java.io.StringWriter;
+import java.io.Writer;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -26,7 +31,6 @@
 
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.api.Document;
-import com.xpn.xwiki.doc.XWikiDocument;
 
 /**
  * Script service for working with the family dashboard.
@@ -40,19 +44,28 @@
 public class FamilyDashboardScriptService implements ScriptService
 {
     @Inject
-    private DocumentAccessBridge documentAccessBridge;
+    private FamilyTableConfigurationSource configurationSource;
 
     /** Provides access to the current execution context. */
     @Inject
     private Provider<XWikiContext> xcontextProvider;
 
     @Inject
-    private AuthorizationManager authorizationManager;
+    private DocumentRightsChecker rightsChecker;
+
+    @Inject
+    private FamilyTableCache tableCache;
+
+    @Inject
+    private VocabularyTermCache termCache;
 
     @Inject
     @Named("hpo")
     private Vocabulary hpoService;
 
+    @Inject
+    private TableRowExecutor rowExecutor;
+
     @Inject
     @Named("omim")
     private Vocabulary omimService;
@@ -66,24 +79,87 @@ public class FamilyDashboardScriptService implements ScriptService
      */
     public String getFamilyTableHtml(Document doc) throws Exception
     {
-        TableGenerator tableGen =
-            new TableGenerator(new PhenotipsFamily(doc.getDocument()), getFamilyTableConfig(),
-                this.omimService, this.hpoService, this.xcontextProvider.get(), this.authorizationManager);
+        TableGenerator tableGen = getTableGenerator(doc);
+        String key = getCacheKey(doc, tableGen);
+        if (key == null) {
+            return tableGen.getHtml();
+        }
 
-        return tableGen.getHtml();
+        String html = this.tableCache.get(key);
+        if (html == null) {
+            html = tableGen.getHtml();
+            if (html != null) {
+                this.tableCache.put(key, tableGen.getCacheDependencies(), html);
+            }
+        }
+        return html;
     }
 
     /**
-     * Gets the table configuration from an XWikiDocument {@code PhenoTips.FamilySheetCode}.
+     * Writes the table of family members for the family dashboard directly to the given writer, for example the
+     * response writer, without holding the whole table in memory.
      *
-     * @return The object containing the table configuration.
+     * @param doc - the current document.
+     * @param writer - the writer where the HTML content for the table of family members is written.
+     * @return {@code true} if the table was written, {@code false} if there was nothing to write.
+     * @throws Exception if the table cannot be constructed or written.
+     */
+    public boolean writeFamilyTableHtml(Document doc, Writer writer) throws Exception
+    {
+        TableGenerator tableGen = getTableGenerator(doc);
+        String key = getCacheKey(doc, tableGen);
+        if (key == null) {
+            return tableGen.writeHtml(writer);
+        }
+
+        String html = this.tableCache.get(key);
+        if (html == null) {
+            StringWriter buffer = new StringWriter();
+            if (!tableGen.writeHtml(buffer)) {
+                return false;
+            }
+            html = buffer.toString();
+            this.tableCache.put(key, tableGen.getCacheDependencies(), html);
+        }
+        writer.write(html);
+        writer.flush();
+        return true;
+    }
+
+    /**
+     * Gets the table configuration from an XWikiDocument {@code PhenoTips.FamilySheetCode}. The configuration is
+     * cached and reloaded only after the document changes.
+     *
+     * @return A new object containing the table configuration.
      * @throws Exception if the XWikiDocument cannot be retrieved or accessed.
      */
     public JSONObject getFamilyTableConfig() throws Exception
     {
-        XWikiDocument configDoc = (XWikiDocument)
-            this.documentAccessBridge.getDocument(new DocumentReference("xwiki", "PhenoTips", "FamilySheetCode"));
+        return this.configurationSource.getConfiguration().toJSON();
+    }
 
-        return new JSONObject(configDoc.getContent());
+    /**
+     * Returns the key under which the table for the given family document is cached. Unsaved family documents are
+     * never cached.
+     *
+     * @param doc the family document
+     * @param tableGen the table generator for that document
+     * @return the rendering key, or {@code null} if the table must not be cached
+     */
+    private String getCacheKey(Document doc, TableGenerator tableGen)
+    {
+        if (doc.isNew()) {
+            return null;
+        }
+        return tableGen.getCacheKey(doc.getVersion());
+    }
+
+    private TableGenerator getTableGenerator(Document doc) throws Exception
+    {
+        TableGenerator tableGen = new TableGenerator(new PhenotipsFamily(doc.getDocument()),
+            this.configurationSource.getConfiguration(), this.omimService, this.hpoService, this.termCache,
+            this.xcontextProvider.get(), this.rightsChecker);
+        tableGen.setRowExecutor(this.rowExecutor);
+        return tableGen;
     }
 }
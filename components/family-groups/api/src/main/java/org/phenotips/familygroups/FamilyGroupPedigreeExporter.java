@@ -9,10 +9,17 @@
 
 import org.xwiki.component.annotation.Role;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Set;
 
 /**
- * Exporter to produce an aggregate PED file for all pedigrees within a family group.
+ * Exporter to produce an aggregate PED file, or an aggregate file in another {@link PedigreeExportFormat}, for all
+ * pedigrees within a family group.
  *
  * @version $Id$
  */
@@ -29,4 +36,116 @@
      *         an empty string if there are no individuals in the family group's families.
      */
     String exportFamilyGroupAsPED(String familyGroupId, List<String> disorders);
+
+    /**
+     * Exports all pedigrees in the family group with the given ID as a multi-family aggregate PED file, writing each
+     * family to the given writer as soon as it is exported, so that the whole file is never held in memory.
+     *
+     * @param familyGroupId ID of the family group to be exported.
+     * @param disorders set of disorders to determine "affected" status.
+     * @param writer the writer where the PED content is written; it is flushed, but not closed.
+     * @return the number of individuals written, 0 if there are no individuals in the family group's families.
+     * @throws IOException if writing to the writer fails.
+     */
+    int exportFamilyGroupAsPED(String familyGroupId, List<String> disorders, Writer writer) throws IOException;
+
+    /**
+     * Exports all pedigrees in the family group with the given ID as a multi-family aggregate PED file, writing the
+     * UTF-8 encoded content to the given stream as each family is exported.
+     *
+     * @param familyGroupId ID of the family group to be exported.
+     * @param disorders set of disorders to determine "affected" status.
+     * @param out the stream where the PED content is written; it is flushed, but not closed.
+     * @return the number of individuals written, 0 if there are no individuals in the family group's families.
+     * @throws IOException if writing to the stream fails.
+     */
+    int exportFamilyGroupAsPED(String familyGroupId, List<String> disorders, OutputStream out) throws IOException;
+
+    /**
+     * Exports all pedigrees in the family group with the given ID as a multi-family aggregate PED file, writing the
+     * UTF-8 encoded content to the given stream as each family is exported. An individual is "affected" if they have
+     * any of the selected disorders or phenotypes.
+     *
+     * @param familyGroupId ID of the family group to be exported.
+     * @param disorders set of disorders to determine "affected" status, OMIM disorders may be given with or without
+     *            the {@code MIM:} prefix.
+     * @param phenotypes set of HPO phenotypes to determine "affected" status.
+     * @param out the stream where the PED content is written; it is flushed, but not closed.
+     * @return the number of individuals written, 0 if there are no individuals in the family group's families.
+     * @throws IOException if writing to the stream fails.
+     */
+    int exportFamilyGroupAsPED(String familyGroupId, Collection<String> disorders, Collection<String> phenotypes,
+        OutputStream out) throws IOException;
+
+    /**
+     * Exports all pedigrees in the family group with the given ID in the requested format, writing the encoded
+     * content to the given stream as each family is exported. An individual is "affected" if they have any of the
+     * selected disorders or phenotypes.
+     *
+     * @param familyGroupId ID of the family group to be exported.
+     * @param format the name of the {@link PedigreeExportFormat} to use, for example {@code ped}, {@code ped.gz} or
+     *            {@code ndjson}.
+     * @param disorders set of disorders to determine "affected" status, OMIM disorders may be given with or without
+     *            the {@code MIM:} prefix.
+     * @param phenotypes set of HPO phenotypes to determine "affected" status.
+     * @param out the stream where the content is written; it is flushed, but not closed.
+     * @return the number of individuals written, 0 if there are no individuals in the family group's families.
+     * @throws IOException if writing to the stream fails.
+     * @throws IllegalArgumentException if the format is unknown.
+     */
+    int exportFamilyGroup(String familyGroupId, String format, Collection<String> disorders,
+        Collection<String> phenotypes, OutputStream out) throws IOException;
+
+    /**
+     * Exports several family groups in the requested format, as a zip archive holding one file per family group,
+     * named after the family group ID and the format's file extension. The archive is written to the given stream as
+     * each family is exported. Families included in several of the family groups are only loaded and converted once.
+     * Access rights are not checked, callers should only pass the family groups the current user can view.
+     *
+     * @param familyGroupIds the IDs of the family groups to be exported, unknown IDs are skipped.
+     * @param format the name of the {@link PedigreeExportFormat} to use for each family group.
+     * @param disorders set of disorders to determine "affected" status.
+     * @param phenotypes set of HPO phenotypes to determine "affected" status.
+     * @param out the stream where the archive is written; it is flushed, but not closed.
+     * @return the number of individuals written, over all family groups.
+     * @throws IOException if writing to the stream fails.
+     * @throws IllegalArgumentException if the format is unknown.
+     */
+    int exportFamilyGroups(Collection<String> familyGroupIds, String format, Collection<String> disorders,
+        Collection<String> phenotypes, OutputStream out) throws IOException;
+
+    /**
+     * Incrementally exports the family group with the given ID in the requested format: only the families whose
+     * documents were modified after the given date, or which joined the family group after that date, are exported.
+     * In formats which {@link PedigreeExportFormat#supportsRemovedFamilies() support removed families}, they are
+     * followed by a {@link PedigreeRecordWriter#writeRemovedFamily tombstone} for each family that was in the family
+     * group at that date, but was removed since. In other formats, such as PED, only the changed families are written,
+     * and the removed ones are listed by {@link #getRemovedFamilyIds}. Consumers can thus apply the changes to the
+     * result of a previous export, instead of exporting the whole family group again. If the state of the family group
+     * at that date is unknown, all its families are exported.
+     *
+     * @param familyGroupId ID of the family group to be exported.
+     * @param since the date of the previous export.
+     * @param format the name of the {@link PedigreeExportFormat} to use.
+     * @param disorders set of disorders to determine "affected" status.
+     * @param phenotypes set of HPO phenotypes to determine "affected" status.
+     * @param out the stream where the content is written; it is flushed, but not closed.
+     * @return the number of individuals written.
+     * @throws IOException if writing to the stream fails.
+     * @throws IllegalArgumentException if the format is unknown.
+     */
+    int exportFamilyGroupChanges(String familyGroupId, Date since, String format, Collection<String> disorders,
+        Collection<String> phenotypes, OutputStream out) throws IOException;
+
+    /**
+     * Lists the families removed from the family group with the given ID since the given date, which an incremental
+     * export in a format that can't record removed families leaves out.
+     *
+     * @param familyGroupId ID of the family group.
+     * @param since the date of the previous export.
+     * @return the sorted identifiers of the families which were in the family group at that date, but aren't anymore;
+     *         {@code null} if the state of the family group at that date is unknown, in which case an incremental
+     *         export holds all its families.
+     */
+    Set<String> getRemovedFamilyIds(String familyGroupId, Date since);
 }
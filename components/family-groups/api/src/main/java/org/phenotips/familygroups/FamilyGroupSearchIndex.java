@@ -0,0 +1,50 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups;
+
+import org.xwiki.component.annotation.Role;
+
+import java.util.List;
+
+/**
+ * In-memory index of the identifiers and names of all the family groups, used for suggesting family groups while the
+ * user types. The index is loaded when first used, and then kept current when family groups are saved or deleted.
+ * Access rights are not taken into account, so callers must filter the results.
+ *
+ * @version $Id$
+ */
+@Role
+public interface FamilyGroupSearchIndex
+{
+    /**
+     * Finds the family groups whose identifier or name contains the input, ignoring case. Results are ranked: exact
+     * matches first, then family groups with an identifier or name starting with the input, then those with a word of
+     * the name starting with the input, and finally any other match; shorter names are ranked first within each rank.
+     *
+     * @param input the text typed by the user
+     * @param limit the maximum number of results to return, {@link Integer#MAX_VALUE} for all the matches
+     * @return the identifiers of the best matching family groups, an empty list if none matches, or {@code null} if the
+     *         index couldn't be loaded, in which case the database should be queried instead
+     */
+    List<String> search(String input, int limit);
+
+    /**
+     * Adds a family group to the index, or updates its name.
+     *
+     * @param familyGroupId the identifier of the family group
+     * @param name the name of the family group, may be {@code null}
+     */
+    void update(String familyGroupId, String name);
+
+    /**
+     * Removes a deleted family group from the index.
+     *
+     * @param familyGroupId the identifier of the family group
+     */
+    void remove(String familyGroupId);
+}
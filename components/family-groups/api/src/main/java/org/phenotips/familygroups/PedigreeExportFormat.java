@@ -0,0 +1,77 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups;
+
+import org.xwiki.component.annotation.Role;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * A format in which family group pedigrees can be exported by {@link FamilyGroupPedigreeExporter}. Formats are
+ * components, and the hint of each implementation is the name used to request it, for example {@code ped}. The
+ * exporter walks each pedigree once, and hands each individual to the {@link PedigreeRecordWriter record writer} of
+ * the requested format; the resulting text is then encoded into the output stream by {@link #encode}.
+ *
+ * @version $Id$
+ */
+@Role
+public interface PedigreeExportFormat
+{
+    /**
+     * Returns the media type of the exported content.
+     *
+     * @return a media type, for example {@code text/plain}
+     */
+    String getMediaType();
+
+    /**
+     * Returns the extension of the files holding exported content.
+     *
+     * @return a file extension without the leading dot, for example {@code ped}
+     */
+    String getFileExtension();
+
+    /**
+     * Identifies the text produced by the record writers of this format. Formats that only differ in how that text is
+     * encoded, for example a compressed variant of another format, return the same value, which allows the exporter
+     * to reuse the text exported for one of them.
+     *
+     * @return an identifier of the text format, for example {@code ped}
+     */
+    String getRecordFormat();
+
+    /**
+     * Creates a writer for the individuals of exported pedigrees.
+     *
+     * @param writer the writer where the records are written
+     * @return a new record writer, used by a single thread
+     */
+    PedigreeRecordWriter createRecordWriter(Writer writer);
+
+    /**
+     * Tells whether the records of this format can tell consumers that a family was removed. Formats where each record
+     * must describe an individual, such as PED, can't; their incremental exports only hold the changed families, and
+     * the removed ones are reported separately.
+     *
+     * @return {@code true} if the record writers of this format support
+     *         {@link PedigreeRecordWriter#writeRemovedFamily}
+     */
+    boolean supportsRemovedFamilies();
+
+    /**
+     * Wraps the output stream of an export, for example to compress the content. The UTF-8 encoded text produced by
+     * the record writers is written to the returned stream, which is closed once the export is done.
+     *
+     * @param out the output stream of the export, which can be closed by closing the returned stream
+     * @return the stream where the text should be written, possibly {@code out} itself
+     * @throws IOException if writing to the stream fails
+     */
+    OutputStream encode(OutputStream out) throws IOException;
+}
@@ -0,0 +1,38 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups;
+
+import org.xwiki.component.annotation.Role;
+
+import java.util.List;
+
+/**
+ * Keeps track of the running and recently finished family group pedigree exports.
+ *
+ * @version $Id$
+ */
+@Role
+public interface PedigreeExportMonitor
+{
+    /**
+     * Starts tracking a new export.
+     *
+     * @param familyGroupId the ID of the exported family group
+     * @param familyCount the number of families to export
+     * @return the progress of the new export, to be updated by the exporter and {@link PedigreeExportProgress#finish()
+     *         finished} once done
+     */
+    PedigreeExportProgress startExport(String familyGroupId, int familyCount);
+
+    /**
+     * Returns the exports currently running, followed by the most recently finished ones.
+     *
+     * @return a new list of export progress objects
+     */
+    List<PedigreeExportProgress> getExports();
+}
@@ -0,0 +1,86 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups;
+
+import java.util.Map;
+
+/**
+ * Progress and timing of one family group pedigree export, updated by the exporter as each family is written.
+ *
+ * @version $Id$
+ */
+public interface PedigreeExportProgress
+{
+    /**
+     * Returns the ID of the exported family group.
+     *
+     * @return the family group ID
+     */
+    String getFamilyGroupId();
+
+    /**
+     * Returns the number of families in the exported family group.
+     *
+     * @return the total number of families to export
+     */
+    int getFamilyCount();
+
+    /**
+     * Returns the number of families already written.
+     *
+     * @return the number of exported families
+     */
+    int getExportedFamilyCount();
+
+    /**
+     * Returns the number of individuals already written.
+     *
+     * @return the number of exported individuals
+     */
+    int getIndividualCount();
+
+    /**
+     * Returns when the export started.
+     *
+     * @return the start time, in milliseconds since the epoch
+     */
+    long getStartTime();
+
+    /**
+     * Returns how long the export took, or has been running for if it isn't finished yet.
+     *
+     * @return the duration, in milliseconds
+     */
+    long getDuration();
+
+    /**
+     * Whether the export is over, successfully or not.
+     *
+     * @return {@code true} if the export is finished
+     */
+    boolean isFinished();
+
+    /**
+     * Returns how long loading and converting each exported family took.
+     *
+     * @return an unmodifiable map from family IDs to durations in milliseconds, in export order
+     */
+    Map<String, Long> getFamilyDurations();
+
+    /**
+     * Records that a family was written. Called by the exporter.
+     *
+     * @param familyId the ID of the exported family
+     * @param individuals the number of individuals written for the family
+     * @param duration how long loading and converting the family took, in milliseconds
+     */
+    void familyExported(String familyId, int individuals, long duration);
+
+    /** Records that the export is over. Called by the exporter. */
+    void finish();
+}
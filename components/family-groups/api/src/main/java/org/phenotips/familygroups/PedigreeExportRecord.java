@@ -0,0 +1,82 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups;
+
+import java.util.Collection;
+
+/**
+ * One individual of a pedigree, as seen by a {@link PedigreeRecordWriter} while a family group is exported. Records
+ * may be reused for the next individual once written, so writers must not keep references to them.
+ *
+ * @version $Id$
+ */
+public interface PedigreeExportRecord
+{
+    /**
+     * Returns the identifier of the family the individual belongs to.
+     *
+     * @return a family identifier, for example {@code FAM0000001}
+     */
+    String getFamilyId();
+
+    /**
+     * Returns the identifier of the individual in the exported family, as used in the PED format.
+     *
+     * @return a positive number, unique within the family
+     */
+    int getIndividualId();
+
+    /**
+     * Returns the {@link #getIndividualId() individual identifier} of the father.
+     *
+     * @return the father's identifier, 0 if the father isn't in the pedigree
+     */
+    int getFatherId();
+
+    /**
+     * Returns the {@link #getIndividualId() individual identifier} of the mother.
+     *
+     * @return the mother's identifier, 0 if the mother isn't in the pedigree
+     */
+    int getMotherId();
+
+    /**
+     * Returns the sex of the individual, as coded in the PED format.
+     *
+     * @return 1 for a male, 2 for a female, 3 otherwise
+     */
+    int getSex();
+
+    /**
+     * Whether the individual has any of the disorders or phenotypes selected for the export.
+     *
+     * @return {@code true} if the individual is affected
+     */
+    boolean isAffected();
+
+    /**
+     * Returns the identifier of the node representing the individual in the pedigree graph.
+     *
+     * @return the node identifier
+     */
+    int getNodeId();
+
+    /**
+     * Returns the identifier of the PhenoTips patient record linked to the individual.
+     *
+     * @return the patient identifier, or {@code null} if the individual isn't linked to a patient record
+     */
+    String getPatientId();
+
+    /**
+     * Returns the disorders recorded for the individual in the pedigree.
+     *
+     * @return the disorder identifiers, empty if there are none
+     */
+    Collection<String> getDisorders();
+}
@@ -0,0 +1,45 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups;
+
+import java.io.IOException;
+
+/**
+ * Writes the individuals of exported pedigrees in a given format, as created by
+ * {@link PedigreeExportFormat#createRecordWriter}.
+ *
+ * @version $Id$
+ */
+public interface PedigreeRecordWriter
+{
+    /**
+     * Writes one individual. The output may be buffered until {@link #flush()} is called.
+     *
+     * @param record the individual to write
+     * @throws IOException if writing fails
+     */
+    void write(PedigreeExportRecord record) throws IOException;
+
+    /**
+     * Writes a tombstone, telling consumers of an incremental export that a family was removed from the exported
+     * family group, and that all its previously exported individuals should be dropped.
+     *
+     * @param familyId the identifier of the removed family
+     * @throws IOException if writing fails
+     * @throws UnsupportedOperationException if the format doesn't
+     *             {@link PedigreeExportFormat#supportsRemovedFamilies() support} removed families
+     */
+    void writeRemovedFamily(String familyId) throws IOException;
+
+    /**
+     * Writes any buffered output to the underlying writer, without flushing the underlying writer itself.
+     *
+     * @throws IOException if writing fails
+     */
+    void flush() throws IOException;
+}
@@ -11,17 +11,21 @@
 import org.phenotips.entities.internal.AbstractInternalPrimaryEntityGroupManager;
 import org.phenotips.familygroups.Family;
 import org.phenotips.familygroups.FamilyGroup;
+import org.phenotips.familygroups.internal.FamilyGroupMembershipIndex;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.util.DefaultParameterizedType;
 
 import java.lang.reflect.ParameterizedType;
+import java.util.Collection;
 
+import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
 /**
- * Group manager for Families in Family Groups, implemented using the default Entities API implementation.
+ * Group manager for Families in Family Groups, implemented using the default Entities API implementation. Membership
+ * changes are also recorded in the {@link FamilyGroupMembershipIndex}.
  *
  * @version $Id$
  */
@@ -36,6 +40,9 @@
     public static final ParameterizedType TYPE = new DefaultParameterizedType(null, PrimaryEntityGroupManager.class,
         FamilyGroup.class, Family.class);
 
+    @Inject
+    private FamilyGroupMembershipIndex membershipIndex;
+
     /**
      * Public constructor.
      */
@@ -43,4 +50,48 @@ public FamiliesInFamilyGroupManager()
     {
         super(FamilyGroup.CLASS_REFERENCE, Family.CLASS_REFERENCE);
     }
+
+    @Override
+    public boolean addMember(FamilyGroup group, Family member)
+    {
+        boolean success = super.addMember(group, member);
+        if (success) {
+            this.membershipIndex.addMember(group.getId(), member.getId());
+        }
+        return success;
+    }
+
+    @Override
+    public boolean removeMember(FamilyGroup group, Family member)
+    {
+        boolean success = super.removeMember(group, member);
+        if (success) {
+            this.membershipIndex.removeMember(group.getId(), member.getId());
+        }
+        return success;
+    }
+
+    @Override
+    public boolean addAllMembers(FamilyGroup group, Collection<Family> members)
+    {
+        boolean success = super.addAllMembers(group, members);
+        if (success) {
+            for (Family member : members) {
+                this.membershipIndex.addMember(group.getId(), member.getId());
+            }
+        }
+        return success;
+    }
+
+    @Override
+    public boolean removeAllMembers(FamilyGroup group, Collection<Family> members)
+    {
+        boolean success = super.removeAllMembers(group, members);
+        if (success) {
+            for (Family member : members) {
+                this.membershipIndex.removeMember(group.getId(), member.getId());
+            }
+        }
+        return success;
+    }
 }
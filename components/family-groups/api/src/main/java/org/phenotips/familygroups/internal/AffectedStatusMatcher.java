@@ -0,0 +1,113 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.internal;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Decides the PED "affected" status of individuals from a set of selected disorders and phenotypes, compiled once per
+ * export into hash sets, so that checking each term of an individual takes constant time however many terms are
+ * selected. An individual is affected if any of their disorders or phenotypes is selected.
+ * <p>
+ * OMIM disorders are stored in pedigrees both with and without the {@code MIM:} prefix, so selected OMIM disorders
+ * match in either form.
+ *
+ * @version $Id$
+ */
+public final class AffectedStatusMatcher
+{
+    private static final String OMIM_PREFIX = "MIM:";
+
+    private final Set<String> disorders;
+
+    private final Set<String> phenotypes;
+
+    /** The stable description of the selection, computed once since it is used as a cache key part. */
+    private final String description;
+
+    /**
+     * Compiles a matcher.
+     *
+     * @param disorders the selected disorder identifiers, may be {@code null}
+     * @param phenotypes the selected phenotype identifiers, may be {@code null}
+     */
+    public AffectedStatusMatcher(Collection<String> disorders, Collection<String> phenotypes)
+    {
+        this.disorders = new HashSet<>();
+        if (disorders != null) {
+            for (String disorder : disorders) {
+                if (disorder == null || disorder.isEmpty()) {
+                    continue;
+                }
+                this.disorders.add(disorder);
+                if (disorder.startsWith(OMIM_PREFIX)) {
+                    this.disorders.add(disorder.substring(OMIM_PREFIX.length()));
+                } else if (isNumeric(disorder)) {
+                    this.disorders.add(OMIM_PREFIX + disorder);
+                }
+            }
+        }
+        this.phenotypes = new HashSet<>();
+        if (phenotypes != null) {
+            for (String phenotype : phenotypes) {
+                if (phenotype != null && !phenotype.isEmpty()) {
+                    this.phenotypes.add(phenotype);
+                }
+            }
+        }
+        this.description = "disorders=" + new TreeSet<>(this.disorders) + ";phenotypes="
+            + new TreeSet<>(this.phenotypes);
+    }
+
+    /**
+     * Whether no disorder and no phenotype are selected, in which case nobody is affected.
+     *
+     * @return {@code true} if nothing is selected
+     */
+    public boolean isEmpty()
+    {
+        return this.disorders.isEmpty() && this.phenotypes.isEmpty();
+    }
+
+    /**
+     * Checks whether an individual is affected.
+     *
+     * @param graph the pedigree graph
+     * @param node the node index of the individual
+     * @return {@code true} if the individual has any of the selected disorders or phenotypes
+     */
+    public boolean isAffected(PedigreeGraph graph, int node)
+    {
+        return (!this.disorders.isEmpty() && graph.hasAnyDisorder(node, this.disorders))
+            || (!this.phenotypes.isEmpty() && graph.hasAnyPhenotype(node, this.phenotypes));
+    }
+
+    /**
+     * Returns a stable description of the selection, identical for matchers selecting the same terms.
+     *
+     * @return a string listing the selected terms in sorted order
+     */
+    @Override
+    public String toString()
+    {
+        return this.description;
+    }
+
+    private static boolean isNumeric(String value)
+    {
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.internal;
+
+import org.phenotips.familygroups.PedigreeExportFormat;
+import org.phenotips.familygroups.PedigreeRecordWriter;
+
+import org.xwiki.component.annotation.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.zip.GZIPOutputStream;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * The PED format, compressed with gzip.
+ *
+ * @version $Id$
+ */
+@Component
+@Named("ped.gz")
+@Singleton
+public class CompressedPEDExportFormat implements PedigreeExportFormat
+{
+    private static final int BUFFER_SIZE = 8192;
+
+    @Inject
+    @Named(PEDExportFormat.NAME)
+    private PedigreeExportFormat pedFormat;
+
+    @Override
+    public String getMediaType()
+    {
+        return "application/gzip";
+    }
+
+    @Override
+    public String getFileExtension()
+    {
+        return "ped.gz";
+    }
+
+    @Override
+    public String getRecordFormat()
+    {
+        return this.pedFormat.getRecordFormat();
+    }
+
+    @Override
+    public PedigreeRecordWriter createRecordWriter(Writer writer)
+    {
+        return this.pedFormat.createRecordWriter(writer);
+    }
+
+    @Override
+    public boolean supportsRemovedFamilies()
+    {
+        return this.pedFormat.supportsRemovedFamilies();
+    }
+
+    @Override
+    public OutputStream encode(OutputStream out) throws IOException
+    {
+        return new GZIPOutputStream(out, BUFFER_SIZE);
+    }
+}
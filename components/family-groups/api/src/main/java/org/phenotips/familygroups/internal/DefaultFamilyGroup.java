@@ -17,11 +17,14 @@
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.model.reference.EntityReference;
 
-import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
 
 import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.objects.BaseObject;
@@ -37,6 +40,17 @@ public class DefaultFamilyGroup extends AbstractPrimaryEntity implements FamilyG
     /** Name of the XProperty holding the name in the Family Group XClass. */
     public static final String NAME_XPROPERTY_KEY = "name";
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(DefaultFamilyGroup.class);
+
+    /* The components are singletons, so they are resolved once and shared by all the family groups */
+    private static volatile FamilyGroupMembershipIndex membershipIndex;
+
+    private static volatile PrimaryEntityGroupManager<FamilyGroup, Family> familiesInFamilyGroupManager;
+
+    private volatile Memo<String> name;
+
+    private volatile Memo<Set<String>> familyIds;
+
     /**
      * Basic constructor.
      *
@@ -56,42 +70,90 @@ public EntityReference getType()
     @Override
     public String getName()
     {
+        String version = this.document.getVersion();
+        Memo<String> memo = this.name;
+        if (memo != null && memo.isCurrent(version, 0)) {
+            return memo.value;
+        }
+
         String result = null;
         BaseObject obj = this.document.getXObject(getType());
         BaseClass cls = obj.getXClass(getXContext());
         if (cls.getField(NAME_XPROPERTY_KEY) != null) {
             result = obj.getLargeStringValue(NAME_XPROPERTY_KEY);
         }
+        this.name = new Memo<>(version, 0, result);
         return result;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The identifiers are remembered until either this document or the family group memberships change, so the
+     * returned set is unmodifiable.
+     * </p>
+     */
     @Override
     public Set<String> getFamilyIds()
     {
-        Set<String> familyIds = new HashSet<>();
-        Collection<Family> families = this.getFamiliesInFamilyGroupManager().getMembers(this);
+        String version = this.document.getVersion();
+        FamilyGroupMembershipIndex index = getMembershipIndex();
+        long modifications = index == null ? 0 : index.getModificationCount();
+        Memo<Set<String>> memo = this.familyIds;
+        if (memo != null && memo.isCurrent(version, modifications)) {
+            return memo.value;
+        }
 
-        for (Family family : families) {
-            familyIds.add(family.getId());
+        Set<String> result = index == null ? null : index.getFamilyIds(getId());
+        if (result == null) {
+            Set<String> members = new HashSet<>();
+            for (Family family : getFamiliesInFamilyGroupManager().getMembers(this)) {
+                members.add(family.getId());
+            }
+            result = Collections.unmodifiableSet(members);
         }
+        this.familyIds = new Memo<>(version, modifications, result);
+        return result;
+    }
 
-        return familyIds;
+    /**
+     * Returns the family group membership index, looked up only once.
+     *
+     * @return the membership index, or {@code null} if it cannot be found.
+     */
+    private static FamilyGroupMembershipIndex getMembershipIndex()
+    {
+        FamilyGroupMembershipIndex result = membershipIndex;
+        if (result == null) {
+            try {
+                result = ComponentManagerRegistry.getContextComponentManager()
+                    .getInstance(FamilyGroupMembershipIndex.class);
+                membershipIndex = result;
+            } catch (ComponentLookupException e) {
+                LOGGER.error("Unexpected exception while getting FamilyGroupMembershipIndex: {}", e.getMessage());
+            }
+        }
+        return result;
     }
 
     /**
-     * Returns the Families in Family Group manager instance.
+     * Returns the Families in Family Group manager instance, looked up only once.
      *
      * @return the Families in Family Group manager instance.
      */
-    private PrimaryEntityGroupManager<FamilyGroup, Family> getFamiliesInFamilyGroupManager()
+    private static PrimaryEntityGroupManager<FamilyGroup, Family> getFamiliesInFamilyGroupManager()
     {
-        try {
-            return ComponentManagerRegistry.getContextComponentManager().getInstance(
-                FamiliesInFamilyGroupManager.TYPE, "FamilyGroup:Family");
-        } catch (ComponentLookupException e) {
-            this.logger.error("Unexpected exception while getting FamiliesInFamilyGroupManager: {}", e.getMessage());
+        PrimaryEntityGroupManager<FamilyGroup, Family> result = familiesInFamilyGroupManager;
+        if (result == null) {
+            try {
+                result = ComponentManagerRegistry.getContextComponentManager().getInstance(
+                    FamiliesInFamilyGroupManager.TYPE, "FamilyGroup:Family");
+                familiesInFamilyGroupManager = result;
+            } catch (ComponentLookupException e) {
+                LOGGER.error("Unexpected exception while getting FamiliesInFamilyGroupManager: {}", e.getMessage());
+            }
         }
-        return null;
+        return result;
     }
 
     @Override
@@ -111,4 +173,30 @@ public void updateFromJSON(JSONObject jsonObject)
     {
         throw new UnsupportedOperationException("Not implemented.");
     }
+
+    /**
+     * A value computed from a given version of the document and state of the membership index.
+     *
+     * @param <T> the type of the value
+     */
+    private static final class Memo<T>
+    {
+        private final String version;
+
+        private final long modifications;
+
+        private final T value;
+
+        Memo(String version, long modifications, T value)
+        {
+            this.version = version;
+            this.modifications = modifications;
+            this.value = value;
+        }
+
+        boolean isCurrent(String currentVersion, long currentModifications)
+        {
+            return this.modifications == currentModifications && Objects.equals(this.version, currentVersion);
+        }
+    }
 }
@@ -0,0 +1,126 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.internal;
+
+import org.phenotips.entities.PrimaryEntityGroupManager;
+import org.phenotips.familygroups.Family;
+import org.phenotips.familygroups.FamilyGroup;
+
+import org.xwiki.component.annotation.Component;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.criteria.impl.PeriodFactory;
+import com.xpn.xwiki.criteria.impl.RangeFactory;
+import com.xpn.xwiki.criteria.impl.RevisionCriteria;
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Default implementation of {@link FamilyGroupHistory}, loading the revision of the family group document that was
+ * current at the requested date, and reading its members through the Families in Family Group manager.
+ *
+ * @version $Id$
+ */
+@Component
+@Singleton
+public class DefaultFamilyGroupHistory implements FamilyGroupHistory
+{
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    @Inject
+    @Named("FamilyGroup:Family")
+    private PrimaryEntityGroupManager<FamilyGroup, Family> familiesInFamilyGroupManager;
+
+    @Inject
+    private Logger logger;
+
+    @Override
+    public Set<String> getFamilyIdsAt(FamilyGroup familyGroup, Date date)
+    {
+        XWikiContext xcontext = this.xcontextProvider.get();
+        try {
+            XWikiDocument document = xcontext.getWiki().getDocument(familyGroup.getDocumentReference(), xcontext);
+            if (document.isNew() || document.getCreationDate().after(date)) {
+                return null;
+            }
+            String revision = document.getVersion();
+            if (document.getDate().after(date)) {
+                revision = getRevisionAt(document, date, xcontext);
+                if (revision == null) {
+                    return null;
+                }
+            }
+            XWikiDocument pastDocument = xcontext.getWiki().getDocument(document, revision, xcontext);
+            Set<String> familyIds = new HashSet<>();
+            for (Family family : this.familiesInFamilyGroupManager.getMembers(new DefaultFamilyGroup(pastDocument))) {
+                familyIds.add(family.getId());
+            }
+            return familyIds;
+        } catch (XWikiException e) {
+            this.logger.warn("Failed to read the history of family group [{}]: {}", familyGroup.getId(),
+                e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Finds the last revision of a document saved at or before a date.
+     *
+     * @param document the current document
+     * @param date the date of interest
+     * @param xcontext the current context
+     * @return the revision, or {@code null} if the document has no revision that old
+     * @throws XWikiException if the history cannot be read
+     */
+    private String getRevisionAt(XWikiDocument document, Date date, XWikiContext xcontext) throws XWikiException
+    {
+        RevisionCriteria criteria =
+            new RevisionCriteria("", PeriodFactory.createPeriod(0, date.getTime()), RangeFactory.getALL(), true);
+        List<String> revisions = document.getRevisions(criteria, xcontext);
+        String result = null;
+        for (String revision : revisions) {
+            if (result == null || compareRevisions(revision, result) > 0) {
+                result = revision;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compares two revision numbers in the {@code major.minor} format.
+     *
+     * @param first the first revision
+     * @param second the second revision
+     * @return a negative number, zero, or a positive number if the first revision is older, the same, or newer
+     */
+    private int compareRevisions(String first, String second)
+    {
+        String[] firstParts = first.split("\\.");
+        String[] secondParts = second.split("\\.");
+        for (int i = 0; i < Math.min(firstParts.length, secondParts.length); i++) {
+            int result = Integer.compare(Integer.parseInt(firstParts[i]), Integer.parseInt(secondParts[i]));
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(firstParts.length, secondParts.length);
+    }
+}
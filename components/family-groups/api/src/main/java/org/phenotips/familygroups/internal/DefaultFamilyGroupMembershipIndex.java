@@ -0,0 +1,434 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.internal;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+
+/**
+ * Default implementation of {@link FamilyGroupMembershipIndex}. Family and family group identifiers are interned into
+ * dense numbers, and memberships are stored as bit sets indexed by these numbers, in both directions. The index is
+ * loaded from a single query listing the family group and the reference of each member binding, and lookups return
+ * {@code null} until it is loaded, so that callers fall back to the group manager instead of waiting. Updates received
+ * while the query runs are recorded and replayed over the loaded memberships, so they are never overwritten by an
+ * older state. After a failed load, another attempt is only made once a delay, doubled with each failure, has passed.
+ *
+ * @version $Id$
+ */
+@Component
+@Singleton
+public class DefaultFamilyGroupMembershipIndex implements FamilyGroupMembershipIndex
+{
+    /** Lists the families bound to each family group, as stored by the Families in Family Group manager. */
+    private static final String MEMBERSHIP_QUERY = "select doc.name, binding.reference from Document doc, "
+        + "doc.object(PhenoTips.FamilyGroupClass) as familyGroup, doc.object(PhenoTips.EntityBindingClass) as binding";
+
+    private static final long MIN_RETRY_DELAY = TimeUnit.SECONDS.toMillis(30);
+
+    private static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(30);
+
+    @Inject
+    private QueryManager qm;
+
+    @Inject
+    @Named("current")
+    private DocumentReferenceResolver<String> resolver;
+
+    @Inject
+    private Logger logger;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Interner groups = new Interner();
+
+    private final Interner families = new Interner();
+
+    /** The families of each family group, indexed by interned family group number. */
+    private final List<BitSet> familiesByGroup = new ArrayList<>();
+
+    /** The family groups of each family, indexed by interned family number. */
+    private final List<BitSet> groupsByFamily = new ArrayList<>();
+
+    private final AtomicLong modifications = new AtomicLong();
+
+    private final AtomicBoolean loading = new AtomicBoolean();
+
+    /** The updates received while a load is running, {@code null} otherwise; guarded by the write lock. */
+    private List<Update> pendingUpdates;
+
+    private volatile boolean loaded;
+
+    /** The time before which no new attempt is made to load the index, after a failure. */
+    private volatile long retryTime;
+
+    private int failures;
+
+    @Override
+    public boolean load()
+    {
+        if (!this.loading.compareAndSet(false, true)) {
+            // Another thread is loading the index
+            return this.loaded;
+        }
+        try {
+            this.lock.writeLock().lock();
+            try {
+                this.pendingUpdates = new ArrayList<>();
+            } finally {
+                this.lock.writeLock().unlock();
+            }
+
+            Map<String, List<String>> memberships = queryMemberships();
+
+            this.lock.writeLock().lock();
+            try {
+                List<Update> updates = this.pendingUpdates;
+                this.pendingUpdates = null;
+                if (memberships == null) {
+                    scheduleRetry();
+                    return false;
+                }
+                clear();
+                for (Map.Entry<String, List<String>> entry : memberships.entrySet()) {
+                    applySetMembers(entry.getKey(), entry.getValue());
+                }
+                for (Update update : updates) {
+                    update.apply(this);
+                }
+                this.modifications.incrementAndGet();
+                this.failures = 0;
+                this.loaded = true;
+            } finally {
+                this.lock.writeLock().unlock();
+            }
+            this.logger.debug("Loaded the memberships of {} family groups", memberships.size());
+            return true;
+        } finally {
+            this.loading.set(false);
+        }
+    }
+
+    @Override
+    public Set<String> getFamilyIds(String familyGroupId)
+    {
+        if (!isLoaded()) {
+            return null;
+        }
+        this.lock.readLock().lock();
+        try {
+            return lookup(this.groups, this.familiesByGroup, this.families, familyGroupId);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Set<String> getFamilyGroupIds(String familyId)
+    {
+        if (!isLoaded()) {
+            return null;
+        }
+        this.lock.readLock().lock();
+        try {
+            return lookup(this.families, this.groupsByFamily, this.groups, familyId);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long getModificationCount()
+    {
+        return this.modifications.get();
+    }
+
+    @Override
+    public void addMember(String familyGroupId, String familyId)
+    {
+        update(new Update(Update.ADD, familyGroupId, familyId, null));
+    }
+
+    @Override
+    public void removeMember(String familyGroupId, String familyId)
+    {
+        update(new Update(Update.REMOVE, familyGroupId, familyId, null));
+    }
+
+    @Override
+    public void setMembers(String familyGroupId, Collection<String> familyIds)
+    {
+        update(new Update(Update.SET, familyGroupId, null, new ArrayList<>(familyIds)));
+    }
+
+    @Override
+    public void removeFamily(String familyId)
+    {
+        update(new Update(Update.REMOVE_FAMILY, null, familyId, null));
+    }
+
+    /**
+     * Tells whether the index can be used. If it isn't loaded yet, and no load is running or was attempted recently,
+     * the index is loaded in the current thread.
+     *
+     * @return {@code true} if the index is loaded
+     */
+    private boolean isLoaded()
+    {
+        if (!this.loaded && !this.loading.get() && System.currentTimeMillis() >= this.retryTime) {
+            load();
+        }
+        return this.loaded;
+    }
+
+    /**
+     * Lists the families of all the family groups.
+     *
+     * @return the identifiers of the families in each family group having any, or {@code null} if the query failed
+     */
+    private Map<String, List<String>> queryMemberships()
+    {
+        List<Object[]> rows;
+        try {
+            Query query = this.qm.createQuery(MEMBERSHIP_QUERY, Query.XWQL);
+            rows = query.execute();
+        } catch (QueryException | RuntimeException e) {
+            this.logger.error("Failed to load the family group memberships: {}", e.getMessage(), e);
+            return null;
+        }
+        Map<String, List<String>> result = new LinkedHashMap<>();
+        for (Object[] row : rows) {
+            String reference = (String) row[1];
+            if (reference == null || reference.isEmpty()) {
+                continue;
+            }
+            List<String> familyIds = result.get(row[0]);
+            if (familyIds == null) {
+                familyIds = new ArrayList<>();
+                result.put((String) row[0], familyIds);
+            }
+            familyIds.add(this.resolver.resolve(reference).getName());
+        }
+        return result;
+    }
+
+    /** Must be called while holding the write lock. */
+    private void scheduleRetry()
+    {
+        long delay = Math.min(MIN_RETRY_DELAY << Math.min(this.failures, 16), MAX_RETRY_DELAY);
+        this.failures++;
+        this.retryTime = System.currentTimeMillis() + delay;
+        this.logger.warn("The family group membership index will be loaded again in {} seconds",
+            TimeUnit.MILLISECONDS.toSeconds(delay));
+    }
+
+    private void update(Update update)
+    {
+        this.lock.writeLock().lock();
+        try {
+            update.apply(this);
+            if (this.pendingUpdates != null) {
+                this.pendingUpdates.add(update);
+            }
+        } finally {
+            this.modifications.incrementAndGet();
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /** Must be called while holding the write lock. */
+    private void clear()
+    {
+        this.groups.clear();
+        this.families.clear();
+        this.familiesByGroup.clear();
+        this.groupsByFamily.clear();
+    }
+
+    /** Must be called while holding the write lock. */
+    private void applyAddMember(String familyGroupId, String familyId)
+    {
+        int group = intern(this.groups, this.familiesByGroup, familyGroupId);
+        int family = intern(this.families, this.groupsByFamily, familyId);
+        this.familiesByGroup.get(group).set(family);
+        this.groupsByFamily.get(family).set(group);
+    }
+
+    /** Must be called while holding the write lock. */
+    private void applyRemoveMember(String familyGroupId, String familyId)
+    {
+        int group = this.groups.get(familyGroupId);
+        int family = this.families.get(familyId);
+        if (group != Interner.NONE && family != Interner.NONE) {
+            this.familiesByGroup.get(group).clear(family);
+            this.groupsByFamily.get(family).clear(group);
+        }
+    }
+
+    /** Must be called while holding the write lock. */
+    private void applySetMembers(String familyGroupId, Collection<String> familyIds)
+    {
+        int group = intern(this.groups, this.familiesByGroup, familyGroupId);
+        BitSet members = this.familiesByGroup.get(group);
+        for (int family = members.nextSetBit(0); family >= 0; family = members.nextSetBit(family + 1)) {
+            this.groupsByFamily.get(family).clear(group);
+        }
+        members.clear();
+        for (String familyId : familyIds) {
+            int family = intern(this.families, this.groupsByFamily, familyId);
+            members.set(family);
+            this.groupsByFamily.get(family).set(group);
+        }
+    }
+
+    /** Must be called while holding the write lock. */
+    private void applyRemoveFamily(String familyId)
+    {
+        int family = this.families.get(familyId);
+        if (family == Interner.NONE) {
+            return;
+        }
+        BitSet memberships = this.groupsByFamily.get(family);
+        for (int group = memberships.nextSetBit(0); group >= 0; group = memberships.nextSetBit(group + 1)) {
+            this.familiesByGroup.get(group).clear(family);
+        }
+        memberships.clear();
+    }
+
+    private Set<String> lookup(Interner keys, List<BitSet> index, Interner values, String key)
+    {
+        int number = keys.get(key);
+        if (number == Interner.NONE) {
+            return Collections.emptySet();
+        }
+        BitSet bits = index.get(number);
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            result.add(values.getName(i));
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    /** Must be called while holding the write lock. */
+    private int intern(Interner interner, List<BitSet> index, String name)
+    {
+        int number = interner.intern(name);
+        if (number == index.size()) {
+            index.add(new BitSet());
+        }
+        return number;
+    }
+
+    /**
+     * Assigns dense numbers to identifiers, in the order they are first seen.
+     */
+    private static final class Interner
+    {
+        private static final int NONE = -1;
+
+        private final Map<String, Integer> numbers = new HashMap<>();
+
+        private final List<String> names = new ArrayList<>();
+
+        int get(String name)
+        {
+            Integer number = this.numbers.get(name);
+            return number == null ? NONE : number;
+        }
+
+        int intern(String name)
+        {
+            Integer number = this.numbers.get(name);
+            if (number == null) {
+                number = this.names.size();
+                this.numbers.put(name, number);
+                this.names.add(name);
+            }
+            return number;
+        }
+
+        String getName(int number)
+        {
+            return this.names.get(number);
+        }
+
+        void clear()
+        {
+            this.numbers.clear();
+            this.names.clear();
+        }
+    }
+
+    /**
+     * A membership change, recorded so that it can be replayed after a load.
+     */
+    private static final class Update
+    {
+        private static final int ADD = 0;
+
+        private static final int REMOVE = 1;
+
+        private static final int SET = 2;
+
+        private static final int REMOVE_FAMILY = 3;
+
+        private final int type;
+
+        private final String familyGroupId;
+
+        private final String familyId;
+
+        private final List<String> familyIds;
+
+        Update(int type, String familyGroupId, String familyId, List<String> familyIds)
+        {
+            this.type = type;
+            this.familyGroupId = familyGroupId;
+            this.familyId = familyId;
+            this.familyIds = familyIds;
+        }
+
+        /** Must be called while holding the write lock. */
+        void apply(DefaultFamilyGroupMembershipIndex index)
+        {
+            if (this.type == ADD) {
+                index.applyAddMember(this.familyGroupId, this.familyId);
+            } else if (this.type == REMOVE) {
+                index.applyRemoveMember(this.familyGroupId, this.familyId);
+            } else if (this.type == SET) {
+                index.applySetMembers(this.familyGroupId, this.familyIds);
+            } else {
+                index.applyRemoveFamily(this.familyId);
+            }
+        }
+    }
+}
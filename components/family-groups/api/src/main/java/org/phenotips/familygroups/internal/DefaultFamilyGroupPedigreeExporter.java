@@ -12,29 +12,65 @@
 import org.phenotips.familygroups.Family;
 import org.phenotips.familygroups.FamilyGroup;
 import org.phenotips.familygroups.FamilyGroupPedigreeExporter;
+import org.phenotips.familygroups.PedigreeExportFormat;
+import org.phenotips.familygroups.PedigreeExportMonitor;
+import org.phenotips.familygroups.PedigreeExportProgress;
+import org.phenotips.familygroups.PedigreeRecordWriter;
 import org.phenotips.studies.family.FamilyTools;
 import org.phenotips.studies.family.Pedigree;
 
 import org.xwiki.component.annotation.Component;
-
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.model.reference.DocumentReference;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.inject.Provider;
 import javax.inject.Singleton;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
+import org.slf4j.Logger;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
 
 /**
- * Default implementation of family group pedigree exporter.
+ * Default implementation of family group pedigree exporter. Each pedigree is walked once, and its individuals are
+ * handed to the record writer of the requested {@link PedigreeExportFormat}. The fragment exported for each family is
+ * cached for the version of the family document it was exported from, so repeated exports only convert the families
+ * that changed.
  *
  * @version $Id$
  */
 @Component
 @Singleton
+@SuppressWarnings({ "ClassFanOutComplexity", "ClassDataAbstractionCoupling" })
 public class DefaultFamilyGroupPedigreeExporter implements FamilyGroupPedigreeExporter
 {
     @Inject
@@ -48,301 +84,576 @@ public class DefaultFamilyGroupPedigreeExporter implements FamilyGroupPedigreeEx
     @Named("FamilyGroup:Family")
     private PrimaryEntityGroupManager<FamilyGroup, Family> familiesInFamilyGroupManager;
 
+    @Inject
+    private PedigreeExportExecutor executor;
+
+    @Inject
+    private PedigreeExportMonitor monitor;
+
+    @Inject
+    private PEDFragmentCache fragmentCache;
+
+    @Inject
+    private FamilyGroupHistory history;
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    @Inject
+    @Named("context")
+    private Provider<ComponentManager> componentManagerProvider;
+
+    @Inject
+    private Logger logger;
+
     @Override
     public String exportFamilyGroupAsPED(String familyGroupId, List<String> disorders)
     {
-        FamilyGroup familyGroup = (FamilyGroup) this.familyGroupManager.get(familyGroupId);
-        Collection<Family> families = this.familiesInFamilyGroupManager.getMembers(familyGroup);
-        return exportFamiliesAsPED(families, disorders);
+        StringWriter writer = new StringWriter();
+        try {
+            exportFamilyGroupAsPED(familyGroupId, disorders, writer);
+        } catch (IOException e) {
+            // Cannot happen when writing to a string
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
     }
 
-    /**
-     * Exports a set of PhenoTips families to PED format, using the specified set of disorders to determine "affected"
-     * status. Returns a single string containing the concatenated PED exports of all families in the set.
-     *
-     * @param families a set of families.
-     * @param disorders the set of disorders used to determine "affected" status.
-     * @return a single string containing the concatenated PED exports of all families in the set.
-     */
-    private String exportFamiliesAsPED(Collection<Family> families, List<String> disorders)
+    @Override
+    public int exportFamilyGroupAsPED(String familyGroupId, List<String> disorders, Writer writer)
+        throws IOException
     {
-        StringBuilder sb = new StringBuilder();
+        return exportFamilyGroup(familyGroupId,
+            new ExportRequest(getFormat(PEDExportFormat.NAME), new AffectedStatusMatcher(disorders, null), null),
+            writer);
+    }
 
+    @Override
+    public int exportFamilyGroupAsPED(String familyGroupId, List<String> disorders, OutputStream out)
+        throws IOException
+    {
+        return exportFamilyGroupAsPED(familyGroupId, disorders, null, out);
+    }
+
+    @Override
+    public int exportFamilyGroupAsPED(String familyGroupId, Collection<String> disorders,
+        Collection<String> phenotypes, OutputStream out) throws IOException
+    {
+        return exportFamilyGroup(familyGroupId, PEDExportFormat.NAME, disorders, phenotypes, out);
+    }
+
+    @Override
+    public int exportFamilyGroup(String familyGroupId, String format, Collection<String> disorders,
+        Collection<String> phenotypes, OutputStream out) throws IOException
+    {
+        ExportRequest request =
+            new ExportRequest(getFormat(format), new AffectedStatusMatcher(disorders, phenotypes), null);
+        return exportFamilyGroup(familyGroupId, request, out);
+    }
+
+    @Override
+    public int exportFamilyGroups(Collection<String> familyGroupIds, String format, Collection<String> disorders,
+        Collection<String> phenotypes, OutputStream out) throws IOException
+    {
+        // A first pass over the memberships tells which families are shared, and by how many family groups
+        SharedFragments shared = new SharedFragments();
+        List<String> exportedGroupIds = new ArrayList<>(familyGroupIds.size());
+        for (String familyGroupId : familyGroupIds) {
+            FamilyGroup familyGroup = (FamilyGroup) this.familyGroupManager.get(familyGroupId);
+            if (familyGroup != null) {
+                shared.addUses(familyGroup.getFamilyIds());
+                exportedGroupIds.add(familyGroupId);
+            }
+        }
+
+        PedigreeExportFormat exportFormat = getFormat(format);
+        ExportRequest request =
+            new ExportRequest(exportFormat, new AffectedStatusMatcher(disorders, phenotypes), shared);
+        ZipOutputStream zip = new ZipOutputStream(new NonClosingOutputStream(out), StandardCharsets.UTF_8);
+        int count = 0;
+        for (String familyGroupId : exportedGroupIds) {
+            zip.putNextEntry(new ZipEntry(familyGroupId + '.' + exportFormat.getFileExtension()));
+            count += exportFamilyGroup(familyGroupId, request, zip);
+            zip.closeEntry();
+        }
+        // Writes the archive directory and flushes the output stream
+        zip.close();
+        return count;
+    }
+
+    @Override
+    public int exportFamilyGroupChanges(String familyGroupId, Date since, String format,
+        Collection<String> disorders, Collection<String> phenotypes, OutputStream out) throws IOException
+    {
+        ExportRequest request =
+            new ExportRequest(getFormat(format), new AffectedStatusMatcher(disorders, phenotypes), null);
+        FamilyGroup familyGroup = (FamilyGroup) this.familyGroupManager.get(familyGroupId);
+        Collection<Family> families = this.familiesInFamilyGroupManager.getMembers(familyGroup);
+
+        Set<String> previousIds = this.history.getFamilyIdsAt(familyGroup, since);
+        Set<String> removedIds = getRemovedFamilyIds(previousIds, families);
+        List<Family> changedFamilies = new ArrayList<>();
         for (Family family : families) {
-            org.phenotips.studies.family.Family ptFamily = this.familyTools.getFamilyById(family.getId());
+            if (previousIds == null || !previousIds.contains(family.getId())
+                || isModifiedSince(family.getDocumentReference(), since)) {
+                changedFamilies.add(family);
+            }
+        }
 
-            if (ptFamily != null) {
-                sb.append(exportFamilyAsPED(ptFamily, disorders));
+        OutputStream encoded = request.format.encode(new NonClosingOutputStream(out));
+        Writer writer = new OutputStreamWriter(encoded, StandardCharsets.UTF_8);
+        int count = exportMembers(familyGroupId, changedFamilies, request, writer);
+        // Formats which can't record removed families leave it to the caller to report them, see getRemovedFamilyIds
+        if (request.format.supportsRemovedFamilies()) {
+            PedigreeRecordWriter tombstones = request.format.createRecordWriter(writer);
+            for (String familyId : removedIds) {
+                tombstones.writeRemovedFamily(familyId);
             }
+            tombstones.flush();
         }
+        writer.close();
+        this.logger.debug("Exported {} changed and {} removed families of family group [{}] since {}",
+            changedFamilies.size(), removedIds.size(), familyGroupId, since);
+        return count;
+    }
 
-        return sb.toString();
+    @Override
+    public Set<String> getRemovedFamilyIds(String familyGroupId, Date since)
+    {
+        FamilyGroup familyGroup = (FamilyGroup) this.familyGroupManager.get(familyGroupId);
+        Set<String> previousIds = this.history.getFamilyIdsAt(familyGroup, since);
+        if (previousIds == null) {
+            return null;
+        }
+        return getRemovedFamilyIds(previousIds, this.familiesInFamilyGroupManager.getMembers(familyGroup));
     }
 
     /**
-     * Exports a given PhenoTips family to PED format, using the specified set of disorders to determine "affected"
-     * status.
+     * Lists the families which were in a family group at some date, but aren't anymore.
      *
-     * @param family the PhenoTips family.
-     * @param disorders the set of disorders used to determine "affected" status.
-     * @return a string containing the family, exported in PED format.
-     *         an empty string if the family contains no individuals.
+     * @param previousIds the identifiers of the families in the family group at that date, may be {@code null}
+     * @param families the current families of the family group
+     * @return the sorted identifiers of the removed families, empty if the previous state is unknown
      */
-    private String exportFamilyAsPED(org.phenotips.studies.family.Family family, List<String> disorders)
+    private Set<String> getRemovedFamilyIds(Set<String> previousIds, Collection<Family> families)
     {
-        Pedigree ped = family.getPedigree();
-        if (ped == null) {
-            return "";
-        } else {
-            PEDExportablePedigree pedExportablePedigree = new PEDExportablePedigree(ped, disorders);
-            return pedExportablePedigree.exportAsPED(family.getId());
+        Set<String> removedIds = new TreeSet<>();
+        if (previousIds != null) {
+            removedIds.addAll(previousIds);
         }
+        for (Family family : families) {
+            removedIds.remove(family.getId());
+        }
+        return removedIds;
     }
 
     /**
-     * A PhenoTips pedigree that can be exported to PED format.
+     * Exports all pedigrees in a family group to an output stream, encoded as required by the export format.
+     *
+     * @param familyGroupId ID of the family group to be exported.
+     * @param request the settings of the export.
+     * @param out the stream where the exported content is written; it is flushed, but not closed.
+     * @return the number of individuals written.
+     * @throws IOException if writing fails.
      */
-    private class PEDExportablePedigree
+    private int exportFamilyGroup(String familyGroupId, ExportRequest request, OutputStream out) throws IOException
     {
-        public static final String GENDER_KEY = "gender";
-
-        public static final String GENDER_MALE = "M";
-
-        public static final String GENDER_FEMALE = "F";
-
-        public static final String PROP_KEY = "prop";
-
-        public static final String INEDGES_KEY = "inedges";
-
-        public static final String OUTEDGES_KEY = "outedges";
+        OutputStream encoded = request.format.encode(new NonClosingOutputStream(out));
+        Writer writer = new OutputStreamWriter(encoded, StandardCharsets.UTF_8);
+        int count = exportFamilyGroup(familyGroupId, request, writer);
+        // Completes the encoded content, e.g. the compression trailer, and flushes the output stream
+        writer.close();
+        return count;
+    }
 
-        public static final String DISORDERS_KEY = "disorders";
+    /**
+     * Looks up an export format.
+     *
+     * @param format the name of the format.
+     * @return the format component.
+     * @throws IllegalArgumentException if there is no such format.
+     */
+    private PedigreeExportFormat getFormat(String format)
+    {
+        try {
+            return this.componentManagerProvider.get().getInstance(PedigreeExportFormat.class, format);
+        } catch (ComponentLookupException e) {
+            throw new IllegalArgumentException("Unknown pedigree export format: " + format, e);
+        }
+    }
 
-        private JSONArray nodes;
+    /**
+     * Exports all pedigrees in a family group, writing each family as soon as it is exported.
+     *
+     * @param familyGroupId ID of the family group to be exported.
+     * @param request the settings of the export.
+     * @param writer the writer where the exported content is written; it is flushed, but not closed.
+     * @return the number of individuals written.
+     * @throws IOException if writing fails.
+     */
+    private int exportFamilyGroup(String familyGroupId, ExportRequest request, Writer writer) throws IOException
+    {
+        FamilyGroup familyGroup = (FamilyGroup) this.familyGroupManager.get(familyGroupId);
+        Collection<Family> families = this.familiesInFamilyGroupManager.getMembers(familyGroup);
+        return exportMembers(familyGroupId, families, request, writer);
+    }
 
-        private List<String> selectedDisorders;
+    /**
+     * Exports some of the families of a family group, writing each family as soon as it is exported.
+     *
+     * @param familyGroupId ID of the family group being exported.
+     * @param families the families to export.
+     * @param request the settings of the export.
+     * @param writer the writer where the exported content is written; it is flushed, but not closed.
+     * @return the number of individuals written.
+     * @throws IOException if writing fails.
+     */
+    private int exportMembers(String familyGroupId, Collection<Family> families, ExportRequest request,
+        Writer writer) throws IOException
+    {
+        PedigreeExportProgress progress = this.monitor.startExport(familyGroupId, families.size());
+        try {
+            int count;
+            if (this.executor.isEnabled()) {
+                count = exportFamiliesInParallel(families, request, writer, progress);
+            } else {
+                count = exportFamilies(families, request, writer, progress);
+            }
+            writer.flush();
+            this.logger.debug("Exported {} individuals from {} families of family group [{}] in {} ms", count,
+                families.size(), familyGroupId, progress.getDuration());
+            return count;
+        } finally {
+            progress.finish();
+        }
+    }
 
-        /**
-         * Constructs an exportable pedigree using the pedigree and a set of selected disorders, used to determine
-         * "affected" status.
-         *
-         * @param pedigree the family pedigree. Should not be null.
-         * @param selectedDisorders a set of selected disorders, used to determine "affected" status.
-         */
-        PEDExportablePedigree(Pedigree pedigree, List<String> selectedDisorders)
-        {
-            this.nodes = pedigree.getData().getJSONArray("GG");
+    /**
+     * Exports a set of PhenoTips families to the requested format, using the requested matcher to determine
+     * "affected" status. The exports of all families in the set are written one after another to the given writer.
+     *
+     * @param families a set of families.
+     * @param request the settings of the export.
+     * @param writer the writer where the concatenated exports are written.
+     * @param progress the progress of the export, updated after each family.
+     * @return the number of individuals written.
+     * @throws IOException if writing fails.
+     */
+    private int exportFamilies(Collection<Family> families, ExportRequest request, Writer writer,
+        PedigreeExportProgress progress) throws IOException
+    {
+        int count = 0;
+        for (Family family : families) {
+            ExportedFamily exported = exportFamily(family, request);
+            if (exported.ped != null) {
+                writer.write(exported.ped);
+                count += exported.individuals;
+                progress.familyExported(exported.familyId, exported.individuals, exported.duration);
+            }
+        }
 
-            this.selectedDisorders = selectedDisorders;
+        return count;
+    }
 
-            populateInedges();
+    /**
+     * Exports a set of PhenoTips families like {@link #exportFamilies}, but loads and converts several families at
+     * the same time on the export executor. Each family is converted into a separate fragment, and fragments
+     * are written in the same order as the families. Only a limited number of families are processed ahead of the
+     * one being written, so memory use doesn't grow with the number of families.
+     *
+     * @param families a set of families.
+     * @param request the settings of the export.
+     * @param writer the writer where the concatenated exports are written.
+     * @param progress the progress of the export, updated after each family.
+     * @return the number of individuals written.
+     * @throws IOException if writing fails, or if loading a family fails.
+     */
+    private int exportFamiliesInParallel(Collection<Family> families, ExportRequest request, Writer writer,
+        PedigreeExportProgress progress) throws IOException
+    {
+        int window = 2 * this.executor.getParallelism();
+        Iterator<Family> remaining = families.iterator();
+        Deque<Future<ExportedFamily>> pending = new ArrayDeque<>(window);
+        int count = 0;
+        try {
+            while (remaining.hasNext() && pending.size() < window) {
+                pending.add(submit(remaining.next(), request));
+            }
+            while (!pending.isEmpty()) {
+                ExportedFamily exported = getResult(pending.poll());
+                if (remaining.hasNext()) {
+                    pending.add(submit(remaining.next(), request));
+                }
+                if (exported.ped != null) {
+                    writer.write(exported.ped);
+                    count += exported.individuals;
+                    progress.familyExported(exported.familyId, exported.individuals, exported.duration);
+                }
+            }
+        } finally {
+            for (Future<ExportedFamily> future : pending) {
+                future.cancel(true);
+            }
         }
+        return count;
+    }
 
-        /**
-         * Returns an export of the pedigree in PED format.
-         *
-         * @param familyId the family ID to use as the first column value.
-         * @return a string containing the pedigree, exported in PED format.
-         */
-        String exportAsPED(String familyId)
-        {
-            StringBuilder sb = new StringBuilder();
+    private Future<ExportedFamily> submit(Family family, ExportRequest request) throws IOException
+    {
+        try {
+            return this.executor.submit(new FamilyExportTask(family, request));
+        } catch (Exception e) {
+            throw new IOException("Failed to schedule the export of family " + family.getId(), e);
+        }
+    }
 
-            int[] pedIds = getNodeIdsToPedIds();
+    private ExportedFamily getResult(Future<ExportedFamily> future) throws IOException
+    {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while exporting families");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("Failed to export family", e.getCause());
+        }
+    }
 
-            for (int nodeIdx = 0; nodeIdx < this.nodes.length(); nodeIdx++) {
-                JSONObject node = this.nodes.getJSONObject(nodeIdx);
+    /**
+     * Exports one family into a fragment. The fragment already exported for another family group of the same bulk
+     * export is reused, as well as the cached fragment if the family document didn't change since it was last
+     * exported to the same text format with the same criteria.
+     *
+     * @param family the family to export.
+     * @param request the settings of the export.
+     * @return the exported fragment, with a {@code null} content if the family couldn't be found.
+     * @throws IOException if writing fails.
+     */
+    private ExportedFamily exportFamily(Family family, ExportRequest request) throws IOException
+    {
+        long start = System.nanoTime();
+        String familyId = family.getId();
+        PEDFragment fragment = request.shared == null ? null : request.shared.take(familyId);
+        if (fragment == null) {
+            fragment = convertFamily(familyId, family.getDocumentReference(), request);
+            if (fragment == null) {
+                return new ExportedFamily(familyId, null, 0, 0);
+            }
+            if (request.shared != null) {
+                request.shared.offer(familyId, fragment);
+            }
+        }
+        long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        this.logger.debug("Exported {} individuals from family [{}] in {} ms", fragment.getIndividualCount(),
+            familyId, duration);
+        return new ExportedFamily(familyId, fragment.getPED(), fragment.getIndividualCount(), duration);
+    }
 
-                // If this is not a person node, skip it
-                if (node.has(PROP_KEY) && node.getJSONObject(PROP_KEY).length() > 0) {
-                    int[] parentPedIds = getParentPedIds(pedIds, nodeIdx);
+    /**
+     * Converts one family into a fragment, or takes it from the fragment cache.
+     *
+     * @param familyId the identifier of the family.
+     * @param familyReference the reference to the family document.
+     * @param request the settings of the export.
+     * @return the exported fragment, or {@code null} if the family couldn't be found.
+     * @throws IOException if writing fails.
+     */
+    private PEDFragment convertFamily(String familyId, DocumentReference familyReference, ExportRequest request)
+        throws IOException
+    {
+        String version = getVersion(familyReference);
+        String recordFormat = request.format.getRecordFormat();
+        PEDFragment fragment =
+            version == null ? null : this.fragmentCache.get(familyId, version, recordFormat, request.matcher);
+        if (fragment == null) {
+            org.phenotips.studies.family.Family ptFamily = this.familyTools.getFamilyById(familyId);
+            if (ptFamily == null) {
+                return null;
+            }
+            StringWriter content = new StringWriter();
+            PedigreeRecordWriter recordWriter = request.format.createRecordWriter(content);
+            int individuals = exportFamily(ptFamily, request.matcher, recordWriter);
+            recordWriter.flush();
+            fragment = new PEDFragment(content.toString(), individuals);
+            if (version != null) {
+                this.fragmentCache.put(familyId, version, recordFormat, request.matcher, fragment);
+            }
+        }
+        return fragment;
+    }
 
-                    String row = String.format(
-                        "%s %s %s %s %s %s%n",
-                        familyId,
-                        pedIds[nodeIdx],
-                        parentPedIds[0],
-                        parentPedIds[1],
-                        getSexCode(node),
-                        getAffectedStatus(node)
-                    );
+    /**
+     * Returns the current version of a family document, used to tell whether a cached fragment is still valid.
+     *
+     * @param familyReference the reference to the family document.
+     * @return the version of the document, or {@code null} if it cannot be loaded, in which case nothing is cached.
+     */
+    private String getVersion(DocumentReference familyReference)
+    {
+        XWikiDocument document = getDocument(familyReference);
+        return document == null ? null : document.getVersion();
+    }
 
-                    sb.append(row);
-                }
-            }
+    /**
+     * Checks whether a family document was saved after a given date.
+     *
+     * @param familyReference the reference to the family document.
+     * @param since the date of the previous export.
+     * @return {@code true} if the document was modified after that date, or if it cannot be loaded.
+     */
+    private boolean isModifiedSince(DocumentReference familyReference, Date since)
+    {
+        XWikiDocument document = getDocument(familyReference);
+        return document == null || document.getDate() == null || document.getDate().after(since);
+    }
 
-            return sb.toString();
+    private XWikiDocument getDocument(DocumentReference familyReference)
+    {
+        if (familyReference == null) {
+            return null;
+        }
+        try {
+            XWikiContext xcontext = this.xcontextProvider.get();
+            XWikiDocument document = xcontext.getWiki().getDocument(familyReference, xcontext);
+            return document.isNew() ? null : document;
+        } catch (XWikiException e) {
+            this.logger.warn("Failed to load family document [{}]: {}", familyReference, e.getMessage());
+            return null;
         }
+    }
 
-        /**
-         * Returns the individual's parents' node IDs, mapped into the IDs generated for the PED export.
-         *
-         * @param pedIds the IDs generated for the PED export, generated by
-         *        {@code #getNodeIdsToPedIds() getNodeIdsToPedIds}
-         * @param childNodeIdx the node index of the child individual.
-         * @return the individual's parents' PED IDs, using the IDs generated for the PED export.
-         *         [0, 0] if the individual does not have parents in the pedigree.
-         */
-        private int[] getParentPedIds(int[] pedIds, int childNodeIdx)
-        {
-            List<Integer> parents = getParents(childNodeIdx);
+    /**
+     * Exports a given PhenoTips family, using the specified matcher to determine "affected" status.
+     *
+     * @param family the PhenoTips family.
+     * @param matcher the matcher used to determine "affected" status.
+     * @param recordWriter the writer where the family's individuals are written.
+     * @return the number of individuals written, 0 if the family contains no individuals.
+     * @throws IOException if writing fails.
+     */
+    private int exportFamily(org.phenotips.studies.family.Family family, AffectedStatusMatcher matcher,
+        PedigreeRecordWriter recordWriter) throws IOException
+    {
+        Pedigree ped = family.getPedigree();
+        if (ped == null) {
+            return 0;
+        } else {
+            return exportRecords(PedigreeGraph.fromPedigree(ped), family.getId(), matcher, recordWriter);
+        }
+    }
 
-            int[] parentPedIds = {0, 0};
-            if (!parents.isEmpty()) {
-                int fatherIdx = parents.get(0);
-                int motherIdx = parents.get(1);
+    /**
+     * Loads and converts one family into a fragment.
+     */
+    private final class FamilyExportTask implements Callable<ExportedFamily>
+    {
+        private final Family family;
 
-                if (!GENDER_MALE.equals(
-                    this.nodes.getJSONObject(fatherIdx).getJSONObject(PROP_KEY).getString(GENDER_KEY))) {
-                    fatherIdx = parents.get(1);
-                    motherIdx = parents.get(0);
-                }
+        private final ExportRequest request;
 
-                parentPedIds[0] = pedIds[fatherIdx];
-                parentPedIds[1] = pedIds[motherIdx];
-            }
-            return parentPedIds;
+        FamilyExportTask(Family family, ExportRequest request)
+        {
+            this.family = family;
+            this.request = request;
         }
 
-        /**
-         * Returns the indices of the nodes representing an individual's parents in the pedigree node set.
-         *
-         * @param nodeIdx the individual for whom to find parents
-         * @return a set of 2 indices representing the individual's parents in the pedigree node set.
-         *         null, if the individual does not have parents in the pedigree.
-         */
-        private List<Integer> getParents(int nodeIdx)
+        @Override
+        public ExportedFamily call() throws IOException
         {
-            List<Integer> parents = new ArrayList<>();
+            return exportFamily(this.family, this.request);
+        }
+    }
 
-            JSONObject node = this.nodes.optJSONObject(nodeIdx);
-            JSONObject relNode = getAncestorNodeOfType("rel", node);
+    /**
+     * The settings of one export, common to all the exported families.
+     */
+    private static final class ExportRequest
+    {
+        private final PedigreeExportFormat format;
 
-            if (relNode != null) {
-                JSONArray inedges = relNode.getJSONArray(INEDGES_KEY);
-                for (int inedgeIdx = 0; inedgeIdx < 2; inedgeIdx++) {
-                    parents.add(inedges.getInt(inedgeIdx));
-                }
-            }
+        /** Decides the "affected" status of individuals, compiled once for the whole export. */
+        private final AffectedStatusMatcher matcher;
 
-            return parents;
-        }
+        /** The fragments of the families shared between the groups of a bulk export, {@code null} otherwise. */
+        private final SharedFragments shared;
 
-        /**
-         * Returns an ancestor node in the pedigree graph of a given type. Moves up the pedigree graph along the first
-         * inedge of each parent until a node of the given type is found.
-         *
-         * @param nodeType the type of node to look for, e.g. "chhub" or "rel"
-         * @param baseNode the node from which to start to search
-         * @return the closest ancestor node of the specified type.
-         *         null, if a node of the specified type is not found among ancestors.
-         */
-        private JSONObject getAncestorNodeOfType(String nodeType, JSONObject baseNode)
+        ExportRequest(PedigreeExportFormat format, AffectedStatusMatcher matcher, SharedFragments shared)
         {
-            JSONObject result = baseNode;
-            do {
-                if (result == null || !result.has(INEDGES_KEY) || result.getJSONArray(INEDGES_KEY).length() < 1) {
-                    return null;
-                }
-
-                result = this.nodes.getJSONObject(result.getJSONArray(INEDGES_KEY).getInt(0));
-            } while (!(result.has(nodeType) && result.getBoolean(nodeType)));
-
-            return result;
+            this.format = format;
+            this.matcher = matcher;
+            this.shared = shared;
         }
+    }
 
-        /**
-         * Populates a set of "inedges" for each node in the pedigree graph. An "inedge" is an edge pointing into a
-         * given vertex in a directed graph.
-         * <p>
-         * Populating these inedges is useful because it allows us to move upwards through the graph with low time
-         * complexity.
-         */
-        private void populateInedges()
-        {
-            for (int nodeIdx = 0; nodeIdx < this.nodes.length(); nodeIdx++) {
-                JSONObject node = this.nodes.getJSONObject(nodeIdx);
+    /**
+     * The exported fragment of one family, along with its export metrics.
+     */
+    private static final class ExportedFamily
+    {
+        private final String familyId;
 
-                JSONArray outedges = node.optJSONArray(OUTEDGES_KEY);
+        /** The exported individuals of the family, {@code null} if the family couldn't be found. */
+        private final String ped;
 
-                if (outedges == null) {
-                    continue;
-                }
+        private final int individuals;
 
-                for (int outedgeIdx = 0; outedgeIdx < outedges.length(); outedgeIdx++) {
-                    JSONObject outedge = outedges.optJSONObject(outedgeIdx);
-                    if (outedge == null || !outedge.has("to")) {
-                        continue;
-                    }
+        private final long duration;
 
-                    this.nodes.getJSONObject(outedge.getInt("to")).append(INEDGES_KEY, nodeIdx);
-                }
-            }
+        ExportedFamily(String familyId, String ped, int individuals, long duration)
+        {
+            this.familyId = familyId;
+            this.ped = ped;
+            this.individuals = individuals;
+            this.duration = duration;
         }
+    }
 
-        /**
-         * Returns the sex code according to the PED format for the given pedigree node.
-         *
-         * @param node the pedigree node for which to return the sex code, should be a person.
-         * @return 1 for a male
-         *         2 for a female
-         *         3 otherwise
-         */
-        private int getSexCode(JSONObject node)
-        {
-            int sex = 3;
-            if (node.getJSONObject(PROP_KEY).getString(GENDER_KEY).equals(GENDER_MALE)) {
-                sex = 1;
-            } else if (node.getJSONObject(PROP_KEY).getString(GENDER_KEY).equals(GENDER_FEMALE)) {
-                sex = 2;
+    /**
+     * Walks a pedigree graph once, writing each individual to the record writer.
+     *
+     * @param graph the parsed pedigree graph.
+     * @param familyId the family ID of the individuals.
+     * @param matcher the matcher used to determine "affected" status.
+     * @param recordWriter the writer where the pedigree's individuals are written.
+     * @return the number of individuals written.
+     * @throws IOException if writing fails.
+     */
+    private int exportRecords(PedigreeGraph graph, String familyId, AffectedStatusMatcher matcher,
+        PedigreeRecordWriter recordWriter) throws IOException
+    {
+        PedigreeGraphRecord record = new PedigreeGraphRecord(graph, familyId, matcher);
+        for (int node = 0; node < graph.size(); node++) {
+            if (graph.isPerson(node)) {
+                record.setNode(node);
+                recordWriter.write(record);
             }
-            return sex;
         }
+        return graph.getPersonCount();
+    }
 
-        /**
-         * Returns the "affected" status according to the PED format for the given pedigree node.
-         *
-         * @param node the pedigree node for which to return the status, should be a person.
-         * @return 1 if the patient is marked as having 1 or more disorder in the set of selected disorders
-         *         -9 otherwise
-         */
-        private int getAffectedStatus(JSONObject node)
+    /**
+     * Protects the output stream of an export from being closed along with the encoding streams wrapping it.
+     */
+    private static final class NonClosingOutputStream extends FilterOutputStream
+    {
+        NonClosingOutputStream(OutputStream out)
         {
-            JSONObject prop = node.getJSONObject(PROP_KEY);
-
-            if (prop.has(DISORDERS_KEY) && prop.getJSONArray(DISORDERS_KEY).length() > 0) {
-                JSONArray disorders = prop.getJSONArray(DISORDERS_KEY);
-                for (int i = 0; i < disorders.length(); i++) {
-                    if (this.selectedDisorders.contains(disorders.getString(i))) {
-                        return 1;
-                    }
-                }
-                return -9;
-            }
-
-            return -9;
+            super(out);
         }
 
-        /**
-         * Returns an array mapping the zero-based node IDs to unique numeric IDs for the PED export.
-         *
-         * @return an array mapping the zero-based node IDs to unique numeric IDs for the PED export.
-         */
-        private int[] getNodeIdsToPedIds()
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
         {
-            int curPedId = 1;
-            int[] pedIds = new int[this.nodes.length()];
-            for (int i = 0; i < this.nodes.length(); i++) {
-                JSONObject node = this.nodes.getJSONObject(i);
-                if (node.has(PROP_KEY) && node.getJSONObject(PROP_KEY).length() > 0) {
-                    // This is a person node
-                    pedIds[i] = curPedId++;
-                } else {
-                    pedIds[i] = -1;
-                }
-            }
+            this.out.write(b, off, len);
+        }
 
-            return pedIds;
+        @Override
+        public void close() throws IOException
+        {
+            flush();
         }
     }
 }
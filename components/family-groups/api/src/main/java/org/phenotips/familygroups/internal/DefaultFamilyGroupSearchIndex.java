@@ -0,0 +1,391 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.internal;
+
+import org.phenotips.familygroups.FamilyGroupSearchIndex;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+
+/**
+ * Default implementation of {@link FamilyGroupSearchIndex}. The lower case identifier and name of each family group
+ * are split into trigrams, and the index maps each trigram to the sorted numbers of the family groups containing it.
+ * Searching intersects the lists of the trigrams of the input, starting with the shortest one, and then checks and
+ * ranks the remaining candidates. Inputs shorter than a trigram are matched against every family group instead, which
+ * is still a fast in-memory scan.
+ *
+ * @version $Id$
+ */
+@Component
+@Singleton
+public class DefaultFamilyGroupSearchIndex implements FamilyGroupSearchIndex
+{
+    private static final int GRAM_LENGTH = 3;
+
+    private static final int EXACT = 0;
+
+    private static final int PREFIX = 1;
+
+    private static final int WORD_PREFIX = 2;
+
+    private static final int SUBSTRING = 3;
+
+    private static final int NO_MATCH = -1;
+
+    /** The initial capacity of the queue of best matches, which grows as needed for large limits. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Orders matches from the best to the worst. */
+    private static final Comparator<Match> RANKING = new Comparator<Match>()
+    {
+        @Override
+        public int compare(Match m1, Match m2)
+        {
+            int result = Integer.compare(m1.rank, m2.rank);
+            if (result == 0) {
+                result = Integer.compare(m1.nameLength, m2.nameLength);
+            }
+            if (result == 0) {
+                result = m1.familyGroupId.compareTo(m2.familyGroupId);
+            }
+            return result;
+        }
+    };
+
+    @Inject
+    private QueryManager qm;
+
+    @Inject
+    private Logger logger;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** The number assigned to each family group identifier, in the order they were first seen. */
+    private final Map<String, Integer> numbers = new HashMap<>();
+
+    /** The identifier of each family group, indexed by number. */
+    private final List<String> familyGroupIds = new ArrayList<>();
+
+    /** The lower case identifier of each family group, indexed by number. */
+    private final List<String> idKeys = new ArrayList<>();
+
+    /** The lower case name of each family group, indexed by number, empty if the group has no name. */
+    private final List<String> nameKeys = new ArrayList<>();
+
+    /** The numbers of the family groups which currently exist. */
+    private final BitSet live = new BitSet();
+
+    private final Map<String, Postings> postings = new HashMap<>();
+
+    private volatile boolean loaded;
+
+    @Override
+    public List<String> search(String input, int limit)
+    {
+        if (!ensureLoaded()) {
+            return null;
+        }
+        String query = input == null ? "" : input.trim().toLowerCase(Locale.ROOT);
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        PriorityQueue<Match> best = new PriorityQueue<>(Math.min(limit, INITIAL_CAPACITY) + 1,
+            Collections.reverseOrder(RANKING));
+        this.lock.readLock().lock();
+        try {
+            if (query.length() < GRAM_LENGTH) {
+                for (int number = this.live.nextSetBit(0); number >= 0; number = this.live.nextSetBit(number + 1)) {
+                    consider(number, query, best, limit);
+                }
+            } else {
+                Postings candidates = findCandidates(query);
+                for (int i = 0; candidates != null && i < candidates.size; i++) {
+                    consider(candidates.values[i], query, best, limit);
+                }
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+
+        Match[] matches = best.toArray(new Match[best.size()]);
+        Arrays.sort(matches, RANKING);
+        List<String> result = new ArrayList<>(matches.length);
+        for (Match match : matches) {
+            result.add(match.familyGroupId);
+        }
+        return result;
+    }
+
+    @Override
+    public void update(String familyGroupId, String name)
+    {
+        String nameKey = name == null ? "" : name.toLowerCase(Locale.ROOT);
+        this.lock.writeLock().lock();
+        try {
+            Integer number = this.numbers.get(familyGroupId);
+            if (number == null) {
+                number = this.familyGroupIds.size();
+                this.numbers.put(familyGroupId, number);
+                this.familyGroupIds.add(familyGroupId);
+                this.idKeys.add(familyGroupId.toLowerCase(Locale.ROOT));
+                this.nameKeys.add(nameKey);
+            } else if (this.live.get(number)) {
+                if (nameKey.equals(this.nameKeys.get(number))) {
+                    return;
+                }
+                unindex(number);
+                this.nameKeys.set(number, nameKey);
+            } else {
+                this.nameKeys.set(number, nameKey);
+            }
+            for (String gram : getGrams(number)) {
+                Postings list = this.postings.get(gram);
+                if (list == null) {
+                    list = new Postings();
+                    this.postings.put(gram, list);
+                }
+                list.add(number);
+            }
+            this.live.set(number);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(String familyGroupId)
+    {
+        this.lock.writeLock().lock();
+        try {
+            Integer number = this.numbers.get(familyGroupId);
+            if (number != null && this.live.get(number)) {
+                unindex(number);
+                this.live.clear(number);
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Loads the index, the first time it is used.
+     *
+     * @return {@code true} if the index is loaded, {@code false} if loading failed
+     */
+    private boolean ensureLoaded()
+    {
+        if (!this.loaded) {
+            synchronized (this) {
+                if (!this.loaded) {
+                    this.loaded = load();
+                }
+            }
+        }
+        return this.loaded;
+    }
+
+    private boolean load()
+    {
+        List<Object[]> rows;
+        try {
+            Query query = this.qm.createQuery("select doc.name, familyGroup.name from Document doc, "
+                + "doc.object(PhenoTips.FamilyGroupClass) as familyGroup", Query.XWQL);
+            rows = query.execute();
+        } catch (QueryException e) {
+            this.logger.error("Failed to load the family group search index: {}", e.getMessage(), e);
+            return false;
+        }
+        for (Object[] row : rows) {
+            update((String) row[0], (String) row[1]);
+        }
+        this.logger.debug("Indexed {} family groups for searching", rows.size());
+        return true;
+    }
+
+    /** Must be called while holding the read lock. */
+    private Postings findCandidates(String query)
+    {
+        List<Postings> lists = new ArrayList<>();
+        for (int i = 0; i + GRAM_LENGTH <= query.length(); i++) {
+            Postings list = this.postings.get(query.substring(i, i + GRAM_LENGTH));
+            if (list == null) {
+                return null;
+            }
+            lists.add(list);
+        }
+        Postings result = lists.get(0);
+        for (Postings list : lists) {
+            if (list.size < result.size) {
+                result = list;
+            }
+        }
+        for (Postings list : lists) {
+            if (list != result) {
+                result = result.intersect(list);
+            }
+        }
+        return result;
+    }
+
+    /** Must be called while holding the read lock. */
+    private void consider(int number, String query, PriorityQueue<Match> best, int limit)
+    {
+        String nameKey = this.nameKeys.get(number);
+        int rank = rank(this.idKeys.get(number), nameKey, query);
+        if (rank == NO_MATCH) {
+            return;
+        }
+        Match match = new Match(this.familyGroupIds.get(number), rank, nameKey.length());
+        if (best.size() < limit) {
+            best.add(match);
+        } else if (RANKING.compare(match, best.peek()) < 0) {
+            best.poll();
+            best.add(match);
+        }
+    }
+
+    private int rank(String idKey, String nameKey, String query)
+    {
+        if (idKey.equals(query) || nameKey.equals(query)) {
+            return EXACT;
+        }
+        if (idKey.startsWith(query) || nameKey.startsWith(query)) {
+            return PREFIX;
+        }
+        int position = nameKey.indexOf(query);
+        boolean found = position >= 0;
+        while (position > 0) {
+            if (!Character.isLetterOrDigit(nameKey.charAt(position - 1))) {
+                return WORD_PREFIX;
+            }
+            position = nameKey.indexOf(query, position + 1);
+        }
+        return found || idKey.contains(query) ? SUBSTRING : NO_MATCH;
+    }
+
+    /** Must be called while holding the write lock. */
+    private void unindex(int number)
+    {
+        for (String gram : getGrams(number)) {
+            Postings list = this.postings.get(gram);
+            if (list != null) {
+                list.remove(number);
+                if (list.size == 0) {
+                    this.postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    private Set<String> getGrams(int number)
+    {
+        Set<String> result = new LinkedHashSet<>();
+        for (String key : Arrays.asList(this.idKeys.get(number), this.nameKeys.get(number))) {
+            for (int i = 0; i + GRAM_LENGTH <= key.length(); i++) {
+                result.add(key.substring(i, i + GRAM_LENGTH));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A family group matching a search, along with what it is ranked by.
+     */
+    private static final class Match
+    {
+        private final String familyGroupId;
+
+        private final int rank;
+
+        private final int nameLength;
+
+        Match(String familyGroupId, int rank, int nameLength)
+        {
+            this.familyGroupId = familyGroupId;
+            this.rank = rank;
+            this.nameLength = nameLength;
+        }
+    }
+
+    /**
+     * A sorted list of family group numbers, without duplicates.
+     */
+    private static final class Postings
+    {
+        private int[] values = new int[4];
+
+        private int size;
+
+        void add(int number)
+        {
+            int position = Arrays.binarySearch(this.values, 0, this.size, number);
+            if (position >= 0) {
+                return;
+            }
+            position = -position - 1;
+            if (this.size == this.values.length) {
+                this.values = Arrays.copyOf(this.values, this.size * 2);
+            }
+            System.arraycopy(this.values, position, this.values, position + 1, this.size - position);
+            this.values[position] = number;
+            this.size++;
+        }
+
+        void remove(int number)
+        {
+            int position = Arrays.binarySearch(this.values, 0, this.size, number);
+            if (position >= 0) {
+                System.arraycopy(this.values, position + 1, this.values, position, this.size - position - 1);
+                this.size--;
+            }
+        }
+
+        Postings intersect(Postings other)
+        {
+            Postings result = new Postings();
+            result.values = new int[Math.max(1, Math.min(this.size, other.size))];
+            int i = 0;
+            int j = 0;
+            while (i < this.size && j < other.size) {
+                if (this.values[i] < other.values[j]) {
+                    i++;
+                } else if (this.values[i] > other.values[j]) {
+                    j++;
+                } else {
+                    result.values[result.size++] = this.values[i];
+                    i++;
+                    j++;
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.internal;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.cache.event.CacheEntryEvent;
+import org.xwiki.cache.event.CacheEntryListener;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Default implementation of {@link PEDFragmentCache}, using an LRU cache from the XWiki cache manager and keeping
+ * track of which entries were exported from which family. Entries are dropped from this tracking as soon as the cache
+ * removes or evicts them, so it never holds more keys than the cache itself.
+ *
+ * @version $Id$
+ */
+@Component
+@Singleton
+public class DefaultPEDFragmentCache implements PEDFragmentCache, Initializable, CacheEntryListener<PEDFragment>
+{
+    /** The maximum number of fragments kept in memory. */
+    private static final int CAPACITY = 5000;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    private Cache<PEDFragment> cache;
+
+    /** Cache keys indexed by the family they were exported from. */
+    private final ConcurrentMap<String, Set<String>> keysByFamily = new ConcurrentHashMap<>();
+
+    /** The family each cache key was exported from. */
+    private final ConcurrentMap<String, String> familyByKey = new ConcurrentHashMap<>();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        try {
+            this.cache =
+                this.cacheManager.createNewCache(new LRUCacheConfiguration("familygroups.pedFragments", CAPACITY));
+        } catch (CacheException e) {
+            throw new InitializationException("Failed to create the PED fragment cache", e);
+        }
+        this.cache.addCacheEntryListener(this);
+    }
+
+    @Override
+    public PEDFragment get(String familyId, String version, String format, AffectedStatusMatcher matcher)
+    {
+        return this.cache.get(getKey(familyId, version, format, matcher));
+    }
+
+    @Override
+    public void put(String familyId, String version, String format, AffectedStatusMatcher matcher,
+        PEDFragment fragment)
+    {
+        String key = getKey(familyId, version, format, matcher);
+        this.familyByKey.put(key, familyId);
+        Set<String> keys;
+        do {
+            keys = this.keysByFamily.get(familyId);
+            if (keys == null) {
+                Set<String> created = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+                keys = this.keysByFamily.putIfAbsent(familyId, created);
+                if (keys == null) {
+                    keys = created;
+                }
+            }
+            keys.add(key);
+            // Retry if the set was dropped as empty by a concurrent removal
+        } while (this.keysByFamily.get(familyId) != keys);
+        this.cache.set(key, fragment);
+    }
+
+    @Override
+    public void invalidate(String familyId)
+    {
+        Set<String> keys = this.keysByFamily.remove(familyId);
+        if (keys != null) {
+            for (String key : keys) {
+                this.cache.remove(key);
+            }
+        }
+    }
+
+    @Override
+    public void invalidateAll()
+    {
+        this.keysByFamily.clear();
+        this.familyByKey.clear();
+        this.cache.removeAll();
+    }
+
+    @Override
+    public void cacheEntryAdded(CacheEntryEvent<PEDFragment> event)
+    {
+        // Entries are tracked when they are put
+    }
+
+    @Override
+    public void cacheEntryModified(CacheEntryEvent<PEDFragment> event)
+    {
+        // The family of a key never changes
+    }
+
+    @Override
+    public void cacheEntryRemoved(CacheEntryEvent<PEDFragment> event)
+    {
+        String key = event.getEntry().getKey();
+        String familyId = this.familyByKey.remove(key);
+        if (familyId == null) {
+            return;
+        }
+        Set<String> keys = this.keysByFamily.get(familyId);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                this.keysByFamily.remove(familyId, keys);
+            }
+        }
+    }
+
+    private String getKey(String familyId, String version, String format, AffectedStatusMatcher matcher)
+    {
+        return familyId + '@' + version + '|' + format + '|' + matcher;
+    }
+}
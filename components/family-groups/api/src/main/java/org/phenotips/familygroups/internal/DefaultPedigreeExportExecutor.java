@@ -0,0 +1,115 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.internal;
+
+import org.phenotips.concurrent.DaemonThreadFactory;
+import org.phenotips.concurrent.WorkerContextPropagator;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * Default implementation of {@link PedigreeExportExecutor}, using a fixed size thread pool with a bounded queue. When
+ * the queue is full, tasks run in the submitting thread. Configured through the following {@code xwiki.properties}
+ * entries:
+ * <ul>
+ * <li>{@code phenotips.familygroups.parallelExport.enabled}: whether families are exported concurrently,
+ * {@code false} by default</li>
+ * <li>{@code phenotips.familygroups.parallelExport.threads}: the number of worker threads, 4 by default; family
+ * exports mostly wait for the database, so this may exceed the number of processors</li>
+ * </ul>
+ *
+ * @version $Id$
+ */
+@Component
+@Singleton
+public class DefaultPedigreeExportExecutor implements PedigreeExportExecutor, Initializable, Disposable
+{
+    private static final String ENABLED_PROPERTY = "phenotips.familygroups.parallelExport.enabled";
+
+    private static final String THREADS_PROPERTY = "phenotips.familygroups.parallelExport.threads";
+
+    private static final int DEFAULT_THREADS = 4;
+
+    private static final int QUEUE_CAPACITY = 200;
+
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    @Inject
+    private WorkerContextPropagator contextPropagator;
+
+    private boolean enabled;
+
+    private int parallelism = 1;
+
+    private ThreadPoolExecutor executor;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.enabled = this.configuration.getProperty(ENABLED_PROPERTY, Boolean.FALSE);
+        if (!this.enabled) {
+            return;
+        }
+        this.parallelism = Math.max(1, this.configuration.getProperty(THREADS_PROPERTY, DEFAULT_THREADS));
+        this.executor = new ThreadPoolExecutor(this.parallelism, this.parallelism, KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY),
+            new DaemonThreadFactory("familygroups-export-"), new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return this.enabled;
+    }
+
+    @Override
+    public int getParallelism()
+    {
+        return this.parallelism;
+    }
+
+    @Override
+    public <T> Future<T> submit(Callable<T> task) throws Exception
+    {
+        if (!this.enabled) {
+            FutureTask<T> result = new FutureTask<>(task);
+            result.run();
+            return result;
+        }
+        return this.executor.submit(this.contextPropagator.propagate(task));
+    }
+}
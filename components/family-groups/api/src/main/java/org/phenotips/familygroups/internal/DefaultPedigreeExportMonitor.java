@@ -0,0 +1,163 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.internal;
+
+import org.phenotips.familygroups.PedigreeExportMonitor;
+import org.phenotips.familygroups.PedigreeExportProgress;
+
+import org.xwiki.component.annotation.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.inject.Singleton;
+
+/**
+ * Default implementation of {@link PedigreeExportMonitor}, keeping the running exports and the last few finished ones
+ * in memory.
+ *
+ * @version $Id$
+ */
+@Component
+@Singleton
+public class DefaultPedigreeExportMonitor implements PedigreeExportMonitor
+{
+    /** How many finished exports are remembered. */
+    private static final int HISTORY_SIZE = 20;
+
+    private final Set<Progress> running = Collections.newSetFromMap(new ConcurrentHashMap<Progress, Boolean>());
+
+    private final Deque<Progress> finished = new ArrayDeque<>(HISTORY_SIZE);
+
+    @Override
+    public PedigreeExportProgress startExport(String familyGroupId, int familyCount)
+    {
+        Progress progress = new Progress(familyGroupId, familyCount);
+        this.running.add(progress);
+        return progress;
+    }
+
+    @Override
+    public List<PedigreeExportProgress> getExports()
+    {
+        List<PedigreeExportProgress> result = new ArrayList<PedigreeExportProgress>(this.running);
+        synchronized (this.finished) {
+            result.addAll(this.finished);
+        }
+        return result;
+    }
+
+    private void finished(Progress progress)
+    {
+        synchronized (this.finished) {
+            if (this.finished.size() == HISTORY_SIZE) {
+                this.finished.removeLast();
+            }
+            this.finished.addFirst(progress);
+        }
+        this.running.remove(progress);
+    }
+
+    /**
+     * Progress of one export, updated by the exporting thread and read by any thread.
+     */
+    private final class Progress implements PedigreeExportProgress
+    {
+        private final String familyGroupId;
+
+        private final int familyCount;
+
+        private final long startTime = System.currentTimeMillis();
+
+        private final Map<String, Long> familyDurations = new LinkedHashMap<>();
+
+        private int individualCount;
+
+        private long endTime;
+
+        Progress(String familyGroupId, int familyCount)
+        {
+            this.familyGroupId = familyGroupId;
+            this.familyCount = familyCount;
+        }
+
+        @Override
+        public String getFamilyGroupId()
+        {
+            return this.familyGroupId;
+        }
+
+        @Override
+        public int getFamilyCount()
+        {
+            return this.familyCount;
+        }
+
+        @Override
+        public synchronized int getExportedFamilyCount()
+        {
+            return this.familyDurations.size();
+        }
+
+        @Override
+        public synchronized int getIndividualCount()
+        {
+            return this.individualCount;
+        }
+
+        @Override
+        public long getStartTime()
+        {
+            return this.startTime;
+        }
+
+        @Override
+        public synchronized long getDuration()
+        {
+            return (this.endTime == 0 ? System.currentTimeMillis() : this.endTime) - this.startTime;
+        }
+
+        @Override
+        public synchronized boolean isFinished()
+        {
+            return this.endTime != 0;
+        }
+
+        @Override
+        public synchronized Map<String, Long> getFamilyDurations()
+        {
+            return Collections.unmodifiableMap(new LinkedHashMap<>(this.familyDurations));
+        }
+
+        @Override
+        public synchronized void familyExported(String familyId, int individuals, long duration)
+        {
+            this.familyDurations.put(familyId, duration);
+            this.individualCount += individuals;
+        }
+
+        @Override
+        public void finish()
+        {
+            synchronized (this) {
+                if (this.endTime != 0) {
+                    return;
+                }
+                this.endTime = System.currentTimeMillis();
+            }
+            finished(this);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.internal;
+
+import org.phenotips.familygroups.FamilyGroup;
+
+import org.xwiki.component.annotation.Role;
+
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * Gives access to past states of family groups, as recorded in the history of their documents.
+ *
+ * @version $Id$
+ */
+@Role
+public interface FamilyGroupHistory
+{
+    /**
+     * Returns the families a family group held at a given date.
+     *
+     * @param familyGroup the family group
+     * @param date the date of interest
+     * @return the identifiers of the families in the family group at that date, or {@code null} if the family group
+     *         didn't exist yet, or if its history cannot be read
+     */
+    Set<String> getFamilyIdsAt(FamilyGroup familyGroup, Date date);
+}
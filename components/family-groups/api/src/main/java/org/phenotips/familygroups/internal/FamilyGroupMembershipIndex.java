@@ -0,0 +1,90 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.internal;
+
+import org.xwiki.component.annotation.Role;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * In-memory index of the families in each family group, and of the family groups each family belongs to. The index is
+ * loaded when the application starts, and then kept current by the Families in Family Group manager and by document
+ * events, so that membership lookups don't query the database.
+ *
+ * @version $Id$
+ */
+@Role
+public interface FamilyGroupMembershipIndex
+{
+    /**
+     * Loads the memberships of all the family groups from the database, replacing the current content of the index.
+     * Changes recorded while loading are kept. Nothing is done if the index is already being loaded by another thread.
+     *
+     * @return {@code true} if the index is loaded, {@code false} if loading failed or is still running in another
+     *         thread
+     */
+    boolean load();
+
+    /**
+     * Returns the families in a family group.
+     *
+     * @param familyGroupId the identifier of the family group
+     * @return an unmodifiable set of family identifiers, empty for unknown family groups, or {@code null} if the index
+     *         isn't loaded yet, in which case the membership should be read from the group manager
+     */
+    Set<String> getFamilyIds(String familyGroupId);
+
+    /**
+     * Returns the family groups a family belongs to.
+     *
+     * @param familyId the identifier of the family
+     * @return an unmodifiable set of family group identifiers, empty for unknown families, or {@code null} if the
+     *         index isn't loaded yet, in which case the membership should be read from the group manager
+     */
+    Set<String> getFamilyGroupIds(String familyId);
+
+    /**
+     * Returns a counter incremented each time the index changes, so that callers can tell whether something they
+     * computed from the index is still current.
+     *
+     * @return the current modification count
+     */
+    long getModificationCount();
+
+    /**
+     * Records that a family was added to a family group.
+     *
+     * @param familyGroupId the identifier of the family group
+     * @param familyId the identifier of the family
+     */
+    void addMember(String familyGroupId, String familyId);
+
+    /**
+     * Records that a family was removed from a family group.
+     *
+     * @param familyGroupId the identifier of the family group
+     * @param familyId the identifier of the family
+     */
+    void removeMember(String familyGroupId, String familyId);
+
+    /**
+     * Replaces all the families of a family group.
+     *
+     * @param familyGroupId the identifier of the family group
+     * @param familyIds the identifiers of the families now in the family group, empty if the group was deleted
+     */
+    void setMembers(String familyGroupId, Collection<String> familyIds);
+
+    /**
+     * Removes a deleted family from all the family groups.
+     *
+     * @param familyId the identifier of the deleted family
+     */
+    void removeFamily(String familyId);
+}
@@ -0,0 +1,112 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.internal;
+
+import org.phenotips.familygroups.PedigreeExportFormat;
+import org.phenotips.familygroups.PedigreeExportRecord;
+import org.phenotips.familygroups.PedigreeRecordWriter;
+
+import org.xwiki.component.annotation.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * The JSON lines format: one JSON object per line and per individual, holding the PED columns along with the PhenoTips
+ * patient ID, the pedigree node ID and the disorders of the individual. In incremental exports, a removed family is
+ * written as an object holding only the family ID and {@code "removed": true}.
+ *
+ * @version $Id$
+ */
+@Component
+@Named(NDJSONExportFormat.NAME)
+@Singleton
+public class NDJSONExportFormat implements PedigreeExportFormat
+{
+    /** The name of this format. */
+    public static final String NAME = "ndjson";
+
+    private static final String FAMILY_ID = "familyId";
+
+    @Override
+    public String getMediaType()
+    {
+        return "application/x-ndjson";
+    }
+
+    @Override
+    public String getFileExtension()
+    {
+        return NAME;
+    }
+
+    @Override
+    public String getRecordFormat()
+    {
+        return NAME;
+    }
+
+    @Override
+    public PedigreeRecordWriter createRecordWriter(final Writer writer)
+    {
+        return new PedigreeRecordWriter()
+        {
+            @Override
+            public void write(PedigreeExportRecord record) throws IOException
+            {
+                JSONObject json = new JSONObject();
+                json.put(FAMILY_ID, record.getFamilyId());
+                json.put("individualId", record.getIndividualId());
+                json.put("fatherId", record.getFatherId());
+                json.put("motherId", record.getMotherId());
+                json.put("sex", record.getSex());
+                json.put("affected", record.isAffected());
+                json.put("nodeId", record.getNodeId());
+                json.put("phenotipsId", record.getPatientId() == null ? JSONObject.NULL : record.getPatientId());
+                json.put("disorders", new JSONArray(record.getDisorders()));
+                writer.write(json.toString());
+                writer.write('\n');
+            }
+
+            @Override
+            public void writeRemovedFamily(String familyId) throws IOException
+            {
+                JSONObject json = new JSONObject();
+                json.put(FAMILY_ID, familyId);
+                json.put("removed", true);
+                writer.write(json.toString());
+                writer.write('\n');
+            }
+
+            @Override
+            public void flush()
+            {
+                // Records are written right away
+            }
+        };
+    }
+
+    @Override
+    public boolean supportsRemovedFamilies()
+    {
+        return true;
+    }
+
+    @Override
+    public OutputStream encode(OutputStream out)
+    {
+        return out;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.internal;
+
+import org.phenotips.familygroups.PedigreeExportFormat;
+import org.phenotips.familygroups.PedigreeExportRecord;
+import org.phenotips.familygroups.PedigreeRecordWriter;
+
+import org.xwiki.component.annotation.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * The PED format: one space-separated row per individual, with the family, individual, father and mother IDs, the sex
+ * and the affected status. Since every row describes an individual, removed families can't be written; incremental
+ * exports only hold the changed families, and the removed ones are reported outside of the PED content.
+ *
+ * @version $Id$
+ */
+@Component
+@Named(PEDExportFormat.NAME)
+@Singleton
+public class PEDExportFormat implements PedigreeExportFormat
+{
+    /** The name of this format. */
+    public static final String NAME = "ped";
+
+    /** PED status of an individual having one of the selected disorders or phenotypes. */
+    private static final int AFFECTED = 1;
+
+    /** PED status of an individual with unknown status. */
+    private static final int UNKNOWN_STATUS = -9;
+
+    @Override
+    public String getMediaType()
+    {
+        return "text/plain";
+    }
+
+    @Override
+    public String getFileExtension()
+    {
+        return NAME;
+    }
+
+    @Override
+    public String getRecordFormat()
+    {
+        return NAME;
+    }
+
+    @Override
+    public PedigreeRecordWriter createRecordWriter(Writer writer)
+    {
+        final PEDRowEncoder encoder = new PEDRowEncoder(writer);
+        return new PedigreeRecordWriter()
+        {
+            @Override
+            public void write(PedigreeExportRecord record) throws IOException
+            {
+                encoder.writeRow(record.getFamilyId(), record.getIndividualId(), record.getFatherId(),
+                    record.getMotherId(), record.getSex(), record.isAffected() ? AFFECTED : UNKNOWN_STATUS);
+            }
+
+            @Override
+            public void writeRemovedFamily(String familyId)
+            {
+                // Any PED row describes an individual, so a removed family can't be written as one
+                throw new UnsupportedOperationException("PED files can't record removed families");
+            }
+
+            @Override
+            public void flush() throws IOException
+            {
+                encoder.flush();
+            }
+        };
+    }
+
+    @Override
+    public boolean supportsRemovedFamilies()
+    {
+        return false;
+    }
+
+    @Override
+    public OutputStream encode(OutputStream out)
+    {
+        return out;
+    }
+}
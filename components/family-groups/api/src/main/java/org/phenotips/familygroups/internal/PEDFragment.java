@@ -0,0 +1,52 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.internal;
+
+/**
+ * The rows exported for one family, in PED or another text format, along with the number of individuals they describe.
+ *
+ * @version $Id$
+ */
+public final class PEDFragment
+{
+    private final String ped;
+
+    private final int individuals;
+
+    /**
+     * Constructor.
+     *
+     * @param ped the exported rows of the family
+     * @param individuals the number of individuals in the rows
+     */
+    public PEDFragment(String ped, int individuals)
+    {
+        this.ped = ped;
+        this.individuals = individuals;
+    }
+
+    /**
+     * Returns the exported rows of the family.
+     *
+     * @return the rows, each ending with a line separator
+     */
+    public String getPED()
+    {
+        return this.ped;
+    }
+
+    /**
+     * Returns the number of individuals, i.e. of rows, in this fragment.
+     *
+     * @return a positive number, or 0 if the family has no pedigree
+     */
+    public int getIndividualCount()
+    {
+        return this.individuals;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.internal;
+
+import org.xwiki.component.annotation.Role;
+
+/**
+ * Cache of the fragments exported for each family. Fragments are keyed by family, by version of the family document,
+ * by text format, and by the affected status criteria, so an entry is never used for a pedigree it wasn't generated
+ * from. The entries of a family are also dropped as soon as the family is saved, so outdated fragments don't linger.
+ *
+ * @version $Id$
+ */
+@Role
+public interface PEDFragmentCache
+{
+    /**
+     * Looks up the fragment exported for a family.
+     *
+     * @param familyId the identifier of the family
+     * @param version the version of the family document the fragment must have been generated from
+     * @param format the {@link org.phenotips.familygroups.PedigreeExportFormat#getRecordFormat() text format} of the
+     *            fragment
+     * @param matcher the affected status criteria the fragment must have been generated with
+     * @return the cached fragment, or {@code null} if it isn't cached
+     */
+    PEDFragment get(String familyId, String version, String format, AffectedStatusMatcher matcher);
+
+    /**
+     * Stores the fragment exported for a family.
+     *
+     * @param familyId the identifier of the family
+     * @param version the version of the family document the fragment was generated from
+     * @param format the {@link org.phenotips.familygroups.PedigreeExportFormat#getRecordFormat() text format} of the
+     *            fragment
+     * @param matcher the affected status criteria the fragment was generated with
+     * @param fragment the exported fragment
+     */
+    void put(String familyId, String version, String format, AffectedStatusMatcher matcher, PEDFragment fragment);
+
+    /**
+     * Drops all the fragments of a family.
+     *
+     * @param familyId the identifier of the family that changed
+     */
+    void invalidate(String familyId);
+
+    /** Drops all the cached fragments. */
+    void invalidateAll();
+}
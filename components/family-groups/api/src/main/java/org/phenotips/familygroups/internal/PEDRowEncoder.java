@@ -0,0 +1,121 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.internal;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Encodes PED rows into a reusable character buffer, which is written to the underlying writer whenever it fills up.
+ * Numeric columns are formatted digit by digit, so encoding a row neither parses a format string nor allocates any
+ * object.
+ *
+ * @version $Id$
+ */
+public final class PEDRowEncoder
+{
+    private static final char SEPARATOR = ' ';
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private static final int CAPACITY = 8192;
+
+    /** The maximum number of characters needed for an int: a sign and 10 digits. */
+    private static final int MAX_INT_LENGTH = 11;
+
+    private static final int RADIX = 10;
+
+    private final Writer out;
+
+    private final char[] buffer = new char[CAPACITY];
+
+    private int length;
+
+    /**
+     * Constructor for this class.
+     *
+     * @param out the writer where the encoded rows are written
+     */
+    public PEDRowEncoder(Writer out)
+    {
+        this.out = out;
+    }
+
+    /**
+     * Encodes one PED row, terminated by the platform line separator.
+     *
+     * @param familyId the family ID
+     * @param individualId the individual ID
+     * @param fatherId the father's individual ID, 0 if unknown
+     * @param motherId the mother's individual ID, 0 if unknown
+     * @param sex the sex code
+     * @param affectedStatus the affected status code
+     * @throws IOException if the buffer had to be written and writing failed
+     */
+    public void writeRow(String familyId, int individualId, int fatherId, int motherId, int sex, int affectedStatus)
+        throws IOException
+    {
+        append(familyId);
+        appendSeparatedInt(individualId);
+        appendSeparatedInt(fatherId);
+        appendSeparatedInt(motherId);
+        appendSeparatedInt(sex);
+        appendSeparatedInt(affectedStatus);
+        append(LINE_SEPARATOR);
+    }
+
+    /**
+     * Writes the buffered rows to the underlying writer. The underlying writer itself is not flushed.
+     *
+     * @throws IOException if writing fails
+     */
+    public void flush() throws IOException
+    {
+        if (this.length > 0) {
+            this.out.write(this.buffer, 0, this.length);
+            this.length = 0;
+        }
+    }
+
+    private void append(String value) throws IOException
+    {
+        int valueLength = value.length();
+        if (valueLength > CAPACITY - this.length) {
+            flush();
+            if (valueLength > CAPACITY) {
+                this.out.write(value);
+                return;
+            }
+        }
+        value.getChars(0, valueLength, this.buffer, this.length);
+        this.length += valueLength;
+    }
+
+    private void appendSeparatedInt(int value) throws IOException
+    {
+        if (1 + MAX_INT_LENGTH > CAPACITY - this.length) {
+            flush();
+        }
+        this.buffer[this.length++] = SEPARATOR;
+
+        long remaining = value;
+        if (remaining < 0) {
+            this.buffer[this.length++] = '-';
+            remaining = -remaining;
+        }
+        int digits = 1;
+        for (long rest = remaining / RADIX; rest > 0; rest /= RADIX) {
+            digits++;
+        }
+        for (int i = this.length + digits - 1; i >= this.length; i--) {
+            this.buffer[i] = (char) ('0' + remaining % RADIX);
+            remaining /= RADIX;
+        }
+        this.length += digits;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.internal;
+
+import org.xwiki.component.annotation.Role;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Bounded executor used to load and convert the families of a family group export concurrently. Each task runs in a
+ * new execution context with the user, wiki and document of the thread submitting it. Parallel export is opt-in, and
+ * disabled unless enabled in {@code xwiki.properties}.
+ *
+ * @version $Id$
+ */
+@Role
+public interface PedigreeExportExecutor
+{
+    /**
+     * Whether families should be exported concurrently.
+     *
+     * @return {@code true} if parallel export is enabled in the configuration
+     */
+    boolean isEnabled();
+
+    /**
+     * Returns how many tasks can run at the same time.
+     *
+     * @return the number of worker threads, 1 if parallel export is disabled
+     */
+    int getParallelism();
+
+    /**
+     * Submits a task, to be run with the current user, wiki and document. If parallel export is disabled, the task
+     * is run right away in the current thread.
+     *
+     * @param <T> the type of the task result
+     * @param task the task to run
+     * @return the pending result of the task
+     * @throws Exception if the task cannot be scheduled
+     */
+    <T> Future<T> submit(Callable<T> task) throws Exception;
+}
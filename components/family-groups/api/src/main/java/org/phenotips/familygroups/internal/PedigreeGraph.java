@@ -0,0 +1,562 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.internal;
+
+import org.phenotips.studies.family.Pedigree;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Immutable, compact representation of a pedigree graph, parsed once from the {@code "GG"} node array of the stored
+ * pedigree data. Nodes keep the index they have in that array. Adjacency is stored in primitive arrays: the father and
+ * mother of each individual, and the incoming edges of each node in compressed offset/source arrays. The JSON nodes
+ * are read in a single pass, and the parents of all individuals are resolved right after, from the primitive arrays.
+ * The children and partners of each individual, which exports don't need, are only indexed the first time they are
+ * requested. Parsing only reads the pedigree data, which is never modified.
+ * <p>
+ * In the stored pedigree, individuals link to relationship nodes, relationship nodes link to child hub nodes, and
+ * child hub nodes link to the children of the relationship. The parents of an individual are the two nodes linking to
+ * the closest relationship node found by walking up along the first incoming edge of each node.
+ *
+ * @version $Id$
+ */
+public final class PedigreeGraph
+{
+    /** Value returned when a node is missing, for example for an individual without parents in the pedigree. */
+    public static final int NONE = -1;
+
+    /** The sex of an individual that isn't known, or of a node that isn't an individual. */
+    public static final byte SEX_UNKNOWN = 0;
+
+    /** The sex of a male individual. */
+    public static final byte SEX_MALE = 1;
+
+    /** The sex of a female individual. */
+    public static final byte SEX_FEMALE = 2;
+
+    private static final String DATA_KEY = "GG";
+
+    private static final String PROP_KEY = "prop";
+
+    private static final String OUTEDGES_KEY = "outedges";
+
+    private static final String TO_KEY = "to";
+
+    private static final String GENDER_KEY = "gender";
+
+    private static final String DISORDERS_KEY = "disorders";
+
+    private static final String PHENOTYPES_KEY = "hpoTerms";
+
+    private static final String PATIENT_ID_KEY = "phenotipsId";
+
+    private static final String RELATIONSHIP_KEY = "rel";
+
+    private static final String CHILDHUB_KEY = "chhub";
+
+    private static final byte TYPE_PERSON = 1;
+
+    private static final byte TYPE_RELATIONSHIP = 2;
+
+    private static final byte TYPE_CHILDHUB = 3;
+
+    private static final String[] NO_TERMS = new String[0];
+
+    private final int size;
+
+    private final byte[] types;
+
+    private final byte[] sexes;
+
+    /** For individuals, their 1-based position among the individuals of the pedigree; {@link #NONE} otherwise. */
+    private final int[] personNumbers;
+
+    private final int personCount;
+
+    private final int[] fathers;
+
+    private final int[] mothers;
+
+    /** The start offset of each node's incoming edges in {@link #inSources}, plus the total number of edges. */
+    private final int[] inOffsets;
+
+    /** The sources of the incoming edges of all nodes, grouped by target node, in declaration order. */
+    private final int[] inSources;
+
+    /** The children index, as offsets and targets arrays, built when first needed. */
+    private volatile int[][] childIndex;
+
+    /** The partners index, as offsets and targets arrays, built when first needed. */
+    private volatile int[][] partnerIndex;
+
+    private final String[][] disorders;
+
+    private final String[][] phenotypes;
+
+    /** The identifiers of the PhenoTips patient records linked to each person, {@code null} for unlinked nodes. */
+    private final String[] patientIds;
+
+    private PedigreeGraph(JSONArray nodes)
+    {
+        this.size = nodes.length();
+        this.types = new byte[this.size];
+        this.sexes = new byte[this.size];
+        this.personNumbers = new int[this.size];
+        this.disorders = new String[this.size][];
+        this.phenotypes = new String[this.size][];
+        this.patientIds = new String[this.size];
+        this.inOffsets = new int[this.size + 1];
+        int[][] outEdges = new int[this.size][];
+
+        int persons = 0;
+        for (int i = 0; i < this.size; i++) {
+            JSONObject node = nodes.optJSONObject(i);
+            outEdges[i] = parseOutgoingEdges(node);
+            JSONObject prop = node == null ? null : node.optJSONObject(PROP_KEY);
+            this.disorders[i] = NO_TERMS;
+            this.phenotypes[i] = NO_TERMS;
+            this.personNumbers[i] = NONE;
+            if (node != null && node.optBoolean(RELATIONSHIP_KEY)) {
+                this.types[i] = TYPE_RELATIONSHIP;
+            } else if (node != null && node.optBoolean(CHILDHUB_KEY)) {
+                this.types[i] = TYPE_CHILDHUB;
+            } else if (prop != null && prop.length() > 0) {
+                this.types[i] = TYPE_PERSON;
+                this.personNumbers[i] = ++persons;
+                this.sexes[i] = parseSex(prop.optString(GENDER_KEY));
+                this.disorders[i] = parseTerms(prop.optJSONArray(DISORDERS_KEY));
+                this.phenotypes[i] = parseTerms(prop.optJSONArray(PHENOTYPES_KEY));
+                String patientId = prop.optString(PATIENT_ID_KEY, null);
+                this.patientIds[i] = patientId == null || patientId.isEmpty() ? null : patientId;
+            }
+        }
+        this.personCount = persons;
+        this.inSources = invertEdges(outEdges);
+
+        this.fathers = new int[this.size];
+        this.mothers = new int[this.size];
+        findParents();
+    }
+
+    /**
+     * Parses the graph of a pedigree.
+     *
+     * @param pedigree the pedigree, must not be {@code null}
+     * @return the parsed graph
+     */
+    public static PedigreeGraph fromPedigree(Pedigree pedigree)
+    {
+        return fromJSON(pedigree.getData());
+    }
+
+    /**
+     * Parses a pedigree graph from the internal pedigree JSON representation.
+     *
+     * @param data the pedigree data, holding the node array under the {@code "GG"} key; may be {@code null}
+     * @return the parsed graph, empty if the data holds no nodes
+     */
+    public static PedigreeGraph fromJSON(JSONObject data)
+    {
+        JSONArray nodes = data == null ? null : data.optJSONArray(DATA_KEY);
+        return new PedigreeGraph(nodes == null ? new JSONArray() : nodes);
+    }
+
+    /**
+     * Returns the number of nodes in the graph, including relationship and child hub nodes.
+     *
+     * @return the number of nodes
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of individuals in the pedigree.
+     *
+     * @return the number of {@link #isPerson(int) individuals}
+     */
+    public int getPersonCount()
+    {
+        return this.personCount;
+    }
+
+    /**
+     * Checks whether a node represents an individual, i.e. it is neither a relationship nor a child hub, and it has
+     * personal properties.
+     *
+     * @param node the node index
+     * @return {@code true} for individuals
+     */
+    public boolean isPerson(int node)
+    {
+        return this.types[node] == TYPE_PERSON;
+    }
+
+    /**
+     * Checks whether a node represents a relationship between two partners.
+     *
+     * @param node the node index
+     * @return {@code true} for relationship nodes
+     */
+    public boolean isRelationship(int node)
+    {
+        return this.types[node] == TYPE_RELATIONSHIP;
+    }
+
+    /**
+     * Checks whether a node is the hub linking a relationship to its children.
+     *
+     * @param node the node index
+     * @return {@code true} for child hub nodes
+     */
+    public boolean isChildhub(int node)
+    {
+        return this.types[node] == TYPE_CHILDHUB;
+    }
+
+    /**
+     * Returns the 1-based position of an individual among all the individuals of the pedigree, in node order.
+     *
+     * @param node the node index
+     * @return the position of the individual, {@link #NONE} if the node is not an individual
+     */
+    public int getPersonNumber(int node)
+    {
+        return this.personNumbers[node];
+    }
+
+    /**
+     * Returns the sex of an individual.
+     *
+     * @param node the node index
+     * @return one of {@link #SEX_MALE}, {@link #SEX_FEMALE} and {@link #SEX_UNKNOWN}
+     */
+    public byte getSex(int node)
+    {
+        return this.sexes[node];
+    }
+
+    /**
+     * Returns the father of an individual. The father is the first parent linked to the relationship if that parent
+     * is recorded as male, and the other parent otherwise.
+     *
+     * @param node the node index
+     * @return the index of the father's node, {@link #NONE} if the individual has no parents in the pedigree
+     */
+    public int getFather(int node)
+    {
+        return this.fathers[node];
+    }
+
+    /**
+     * Returns the mother of an individual.
+     *
+     * @param node the node index
+     * @return the index of the mother's node, {@link #NONE} if the individual has no parents in the pedigree
+     */
+    public int getMother(int node)
+    {
+        return this.mothers[node];
+    }
+
+    /**
+     * Returns the children of an individual, in node order.
+     *
+     * @param node the node index
+     * @return a new array with the node indexes of the children, empty if there are none
+     */
+    public int[] getChildren(int node)
+    {
+        int[][] index = this.childIndex;
+        if (index == null) {
+            // Building the index twice in concurrent calls is harmless, both results are identical
+            index = indexChildren();
+            this.childIndex = index;
+        }
+        return Arrays.copyOfRange(index[1], index[0][node], index[0][node + 1]);
+    }
+
+    /**
+     * Returns the partners an individual has a relationship with.
+     *
+     * @param node the node index
+     * @return a new array with the node indexes of the partners, empty if there are none
+     */
+    public int[] getPartners(int node)
+    {
+        int[][] index = this.partnerIndex;
+        if (index == null) {
+            index = indexPartners();
+            this.partnerIndex = index;
+        }
+        return Arrays.copyOfRange(index[1], index[0][node], index[0][node + 1]);
+    }
+
+    /**
+     * Returns the disorders recorded for an individual.
+     *
+     * @param node the node index
+     * @return an unmodifiable set of disorder identifiers, empty if there are none
+     */
+    public Set<String> getDisorders(int node)
+    {
+        return toSet(this.disorders[node]);
+    }
+
+    /**
+     * Returns the phenotypes (HPO terms) recorded for an individual.
+     *
+     * @param node the node index
+     * @return an unmodifiable set of phenotype identifiers, empty if there are none
+     */
+    public Set<String> getPhenotypes(int node)
+    {
+        return toSet(this.phenotypes[node]);
+    }
+
+    /**
+     * Returns the identifier of the PhenoTips patient record linked to an individual.
+     *
+     * @param node the node index
+     * @return the patient identifier, for example {@code P0000001}, or {@code null} if the node isn't linked to one
+     */
+    public String getPatientId(int node)
+    {
+        return this.patientIds[node];
+    }
+
+    /**
+     * Checks whether an individual has at least one of the given disorders.
+     *
+     * @param node the node index
+     * @param selectedDisorders the disorder identifiers to look for, preferably a hash set
+     * @return {@code true} if any of the individual's disorders is among the selected ones
+     */
+    public boolean hasAnyDisorder(int node, Collection<String> selectedDisorders)
+    {
+        return containsAny(this.disorders[node], selectedDisorders);
+    }
+
+    /**
+     * Checks whether an individual has at least one of the given phenotypes.
+     *
+     * @param node the node index
+     * @param selectedPhenotypes the phenotype identifiers to look for, preferably a hash set
+     * @return {@code true} if any of the individual's phenotypes is among the selected ones
+     */
+    public boolean hasAnyPhenotype(int node, Collection<String> selectedPhenotypes)
+    {
+        return containsAny(this.phenotypes[node], selectedPhenotypes);
+    }
+
+    private static boolean containsAny(String[] terms, Collection<String> selected)
+    {
+        for (String term : terms) {
+            if (selected.contains(term)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<String> toSet(String[] terms)
+    {
+        if (terms.length == 0) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(terms)));
+    }
+
+    private static byte parseSex(String gender)
+    {
+        if ("M".equals(gender)) {
+            return SEX_MALE;
+        } else if ("F".equals(gender)) {
+            return SEX_FEMALE;
+        }
+        return SEX_UNKNOWN;
+    }
+
+    private static String[] parseTerms(JSONArray terms)
+    {
+        if (terms == null || terms.length() == 0) {
+            return NO_TERMS;
+        }
+        String[] result = new String[terms.length()];
+        int count = 0;
+        for (int i = 0; i < terms.length(); i++) {
+            Object term = terms.opt(i);
+            if (term != null && term != JSONObject.NULL) {
+                result[count++] = String.valueOf(term);
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Reads the targets of the outgoing edges of a node, ignoring edges to unknown nodes.
+     *
+     * @param node the JSON node, may be {@code null}
+     * @return the target node indexes, in declaration order
+     */
+    private int[] parseOutgoingEdges(JSONObject node)
+    {
+        JSONArray outedges = node == null ? null : node.optJSONArray(OUTEDGES_KEY);
+        int[] targets = new int[outedges == null ? 0 : outedges.length()];
+        int count = 0;
+        for (int j = 0; j < targets.length; j++) {
+            JSONObject outedge = outedges.optJSONObject(j);
+            int target = outedge == null ? NONE : outedge.optInt(TO_KEY, NONE);
+            if (target >= 0 && target < this.size) {
+                targets[count++] = target;
+                this.inOffsets[target + 1]++;
+            }
+        }
+        return count == targets.length ? targets : Arrays.copyOf(targets, count);
+    }
+
+    /**
+     * Inverts the outgoing edges of all nodes. The sources of the edges coming into each node are listed in node
+     * order, which is the order in which the edges are declared.
+     *
+     * @param outEdges the targets of the outgoing edges of each node, already counted in {@link #inOffsets}
+     * @return the sources of the incoming edges of all nodes, grouped by target node
+     */
+    private int[] invertEdges(int[][] outEdges)
+    {
+        int[] next = accumulate(this.inOffsets);
+        int[] sources = new int[this.inOffsets[this.size]];
+        for (int i = 0; i < this.size; i++) {
+            for (int target : outEdges[i]) {
+                sources[next[target]++] = i;
+            }
+        }
+        return sources;
+    }
+
+    private void findParents()
+    {
+        int[] inOffsets = this.inOffsets;
+        int[] inSources = this.inSources;
+        for (int i = 0; i < this.size; i++) {
+            this.fathers[i] = NONE;
+            this.mothers[i] = NONE;
+            if (!isPerson(i)) {
+                continue;
+            }
+            int relationship = findRelationshipAbove(i);
+            if (relationship == NONE || inOffsets[relationship + 1] - inOffsets[relationship] < 2) {
+                continue;
+            }
+            int first = inSources[inOffsets[relationship]];
+            int second = inSources[inOffsets[relationship] + 1];
+            boolean firstIsFather = this.sexes[first] == SEX_MALE;
+            this.fathers[i] = firstIsFather ? first : second;
+            this.mothers[i] = firstIsFather ? second : first;
+        }
+    }
+
+    /**
+     * Walks up the graph along the first incoming edge of each node, until a relationship node is found.
+     *
+     * @param node the node to start from
+     * @return the closest relationship node above the given one, {@link #NONE} if there is none
+     */
+    private int findRelationshipAbove(int node)
+    {
+        int[] inOffsets = this.inOffsets;
+        int[] inSources = this.inSources;
+        int current = node;
+        // A well formed pedigree has no cycles; the step limit protects against malformed data
+        for (int steps = 0; steps < this.size; steps++) {
+            if (inOffsets[current + 1] == inOffsets[current]) {
+                return NONE;
+            }
+            current = inSources[inOffsets[current]];
+            if (isRelationship(current)) {
+                return current;
+            }
+        }
+        return NONE;
+    }
+
+    private int[][] indexChildren()
+    {
+        int[] offsets = new int[this.size + 1];
+        for (int i = 0; i < this.size; i++) {
+            countEdge(offsets, this.fathers[i]);
+            if (this.mothers[i] != this.fathers[i]) {
+                countEdge(offsets, this.mothers[i]);
+            }
+        }
+        int[] next = accumulate(offsets);
+        int[] result = new int[offsets[this.size]];
+        for (int i = 0; i < this.size; i++) {
+            if (this.fathers[i] != NONE) {
+                result[next[this.fathers[i]]++] = i;
+            }
+            if (this.mothers[i] != NONE && this.mothers[i] != this.fathers[i]) {
+                result[next[this.mothers[i]]++] = i;
+            }
+        }
+        return new int[][] { offsets, result };
+    }
+
+    private int[][] indexPartners()
+    {
+        int[] inOffsets = this.inOffsets;
+        int[] inSources = this.inSources;
+        int[] offsets = new int[this.size + 1];
+        for (int i = 0; i < this.size; i++) {
+            if (isRelationship(i) && inOffsets[i + 1] - inOffsets[i] >= 2) {
+                offsets[inSources[inOffsets[i]] + 1]++;
+                offsets[inSources[inOffsets[i] + 1] + 1]++;
+            }
+        }
+        int[] next = accumulate(offsets);
+        int[] result = new int[offsets[this.size]];
+        for (int i = 0; i < this.size; i++) {
+            if (isRelationship(i) && inOffsets[i + 1] - inOffsets[i] >= 2) {
+                int first = inSources[inOffsets[i]];
+                int second = inSources[inOffsets[i] + 1];
+                result[next[first]++] = second;
+                result[next[second]++] = first;
+            }
+        }
+        return new int[][] { offsets, result };
+    }
+
+    private void countEdge(int[] offsets, int source)
+    {
+        if (source != NONE) {
+            offsets[source + 1]++;
+        }
+    }
+
+    /**
+     * Turns per-node counts, stored at {@code offsets[node + 1]}, into start offsets.
+     *
+     * @param offsets the counts to accumulate, in place
+     * @return a copy of the start offsets, to be used as insertion cursors
+     */
+    private int[] accumulate(int[] offsets)
+    {
+        for (int i = 0; i < this.size; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        return Arrays.copyOf(offsets, this.size);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.internal;
+
+import org.phenotips.familygroups.PedigreeExportRecord;
+
+import java.util.Collection;
+
+/**
+ * Presents the individuals of a {@link PedigreeGraph} as export records. A single instance is moved from one
+ * individual to the next with {@link #setNode(int)}, so walking a pedigree doesn't allocate a record per individual.
+ *
+ * @version $Id$
+ */
+final class PedigreeGraphRecord implements PedigreeExportRecord
+{
+    private static final int SEX_CODE_MALE = 1;
+
+    private static final int SEX_CODE_FEMALE = 2;
+
+    private static final int SEX_CODE_UNKNOWN = 3;
+
+    private final PedigreeGraph graph;
+
+    private final String familyId;
+
+    private final AffectedStatusMatcher matcher;
+
+    private int node;
+
+    /**
+     * Constructor.
+     *
+     * @param graph the parsed pedigree graph
+     * @param familyId the identifier of the family the pedigree belongs to
+     * @param matcher the matcher used to determine "affected" status
+     */
+    PedigreeGraphRecord(PedigreeGraph graph, String familyId, AffectedStatusMatcher matcher)
+    {
+        this.graph = graph;
+        this.familyId = familyId;
+        this.matcher = matcher;
+    }
+
+    /**
+     * Moves this record to another individual.
+     *
+     * @param node the node index of the individual, must be a {@link PedigreeGraph#isPerson(int) person}
+     */
+    void setNode(int node)
+    {
+        this.node = node;
+    }
+
+    @Override
+    public String getFamilyId()
+    {
+        return this.familyId;
+    }
+
+    @Override
+    public int getIndividualId()
+    {
+        return this.graph.getPersonNumber(this.node);
+    }
+
+    @Override
+    public int getFatherId()
+    {
+        return getPedId(this.graph.getFather(this.node));
+    }
+
+    @Override
+    public int getMotherId()
+    {
+        return getPedId(this.graph.getMother(this.node));
+    }
+
+    @Override
+    public int getSex()
+    {
+        byte sex = this.graph.getSex(this.node);
+        if (sex == PedigreeGraph.SEX_MALE) {
+            return SEX_CODE_MALE;
+        } else if (sex == PedigreeGraph.SEX_FEMALE) {
+            return SEX_CODE_FEMALE;
+        }
+        return SEX_CODE_UNKNOWN;
+    }
+
+    @Override
+    public boolean isAffected()
+    {
+        return this.matcher.isAffected(this.graph, this.node);
+    }
+
+    @Override
+    public int getNodeId()
+    {
+        return this.node;
+    }
+
+    @Override
+    public String getPatientId()
+    {
+        return this.graph.getPatientId(this.node);
+    }
+
+    @Override
+    public Collection<String> getDisorders()
+    {
+        return this.graph.getDisorders(this.node);
+    }
+
+    private int getPedId(int parent)
+    {
+        return parent == PedigreeGraph.NONE ? 0 : this.graph.getPersonNumber(parent);
+    }
+}
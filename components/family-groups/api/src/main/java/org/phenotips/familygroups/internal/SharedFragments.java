@@ -0,0 +1,84 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.internal;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the fragments of the families shared between several family groups of a bulk export, so that each of these
+ * families is loaded and converted only once. A fragment is only kept until it has been used by all the family groups
+ * that include it, so memory use is bounded by the number of shared families still waiting to be written.
+ *
+ * @version $Id$
+ */
+final class SharedFragments
+{
+    /** The number of family groups still to export, for each family. */
+    private final ConcurrentMap<String, AtomicInteger> remainingUses = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, PEDFragment> fragments = new ConcurrentHashMap<>();
+
+    /**
+     * Records that the given families will be exported as part of one more family group.
+     *
+     * @param familyIds the identifiers of the families in a family group
+     */
+    void addUses(Collection<String> familyIds)
+    {
+        for (String familyId : familyIds) {
+            AtomicInteger uses = this.remainingUses.get(familyId);
+            if (uses == null) {
+                this.remainingUses.put(familyId, new AtomicInteger(1));
+            } else {
+                uses.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Takes the fragment of a family exported for a previous family group, if any, and records one more use.
+     *
+     * @param familyId the identifier of the family
+     * @return the fragment, or {@code null} if the family wasn't exported yet
+     */
+    PEDFragment take(String familyId)
+    {
+        PEDFragment fragment = this.fragments.get(familyId);
+        if (fragment != null) {
+            release(familyId);
+        }
+        return fragment;
+    }
+
+    /**
+     * Records the first use of a family, keeping its fragment if other family groups include it.
+     *
+     * @param familyId the identifier of the family
+     * @param fragment the fragment just exported for the family
+     */
+    void offer(String familyId, PEDFragment fragment)
+    {
+        AtomicInteger uses = this.remainingUses.get(familyId);
+        if (uses != null && uses.get() > 1) {
+            this.fragments.put(familyId, fragment);
+        }
+        release(familyId);
+    }
+
+    private void release(String familyId)
+    {
+        AtomicInteger uses = this.remainingUses.get(familyId);
+        if (uses != null && uses.decrementAndGet() <= 0) {
+            this.remainingUses.remove(familyId);
+            this.fragments.remove(familyId);
+        }
+    }
+}
@@ -13,15 +13,18 @@
 import org.phenotips.familygroups.Family;
 import org.phenotips.familygroups.FamilyGroup;
 import org.phenotips.familygroups.groupmanagers.FamiliesInFamilyGroupManager;
+import org.phenotips.familygroups.internal.FamilyGroupMembershipIndex;
 
 import org.xwiki.bridge.event.DocumentDeletingEvent;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.observation.EventListener;
 import org.xwiki.observation.event.Event;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -45,6 +48,13 @@ public class FamilyDeletingListener implements EventListener
     @Named("Family")
     private PrimaryEntityManager familyManager;
 
+    @Inject
+    @Named("FamilyGroup")
+    private PrimaryEntityManager familyGroupManager;
+
+    @Inject
+    private FamilyGroupMembershipIndex membershipIndex;
+
     @Inject
     private Logger logger;
 
@@ -76,7 +86,7 @@ public void onEvent(Event event, Object source, Object data)
 
             Family family = (Family) this.familyManager.get(documentId);
             if (family != null) {
-                Collection<FamilyGroup> familyGroups = familiesInFamilyGroupManager.getGroupsForMember(family);
+                Collection<FamilyGroup> familyGroups = getFamilyGroups(family, familiesInFamilyGroupManager);
                 for (FamilyGroup fg : familyGroups) {
                     familiesInFamilyGroupManager.removeMember(fg, family);
                 }
@@ -85,4 +95,28 @@ public void onEvent(Event event, Object source, Object data)
             this.logger.error("Failed to access the document: {}", e.getMessage(), e);
         }
     }
+
+    /**
+     * Returns the family groups a family belongs to, from the membership index if it is available.
+     *
+     * @param family the family being deleted
+     * @param familiesInFamilyGroupManager the group manager, used if the index is not available
+     * @return the family groups of the family
+     */
+    private Collection<FamilyGroup> getFamilyGroups(Family family,
+        PrimaryEntityGroupManager<FamilyGroup, Family> familiesInFamilyGroupManager)
+    {
+        Set<String> familyGroupIds = this.membershipIndex.getFamilyGroupIds(family.getId());
+        if (familyGroupIds == null) {
+            return familiesInFamilyGroupManager.getGroupsForMember(family);
+        }
+        Collection<FamilyGroup> familyGroups = new ArrayList<>(familyGroupIds.size());
+        for (String familyGroupId : familyGroupIds) {
+            FamilyGroup familyGroup = (FamilyGroup) this.familyGroupManager.get(familyGroupId);
+            if (familyGroup != null) {
+                familyGroups.add(familyGroup);
+            }
+        }
+        return familyGroups;
+    }
 }
@@ -0,0 +1,102 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.listener;
+
+import org.phenotips.entities.PrimaryEntityGroupManager;
+import org.phenotips.familygroups.Family;
+import org.phenotips.familygroups.FamilyGroup;
+import org.phenotips.familygroups.internal.DefaultFamilyGroup;
+import org.phenotips.familygroups.internal.FamilyGroupMembershipIndex;
+
+import org.xwiki.bridge.event.ApplicationReadyEvent;
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Loads the family group membership index when the application starts, and keeps it current when family groups are
+ * saved or deleted, and when families are deleted.
+ *
+ * @version $Id$
+ */
+@Component
+@Named("familyGroupMembershipListener")
+@Singleton
+public class FamilyGroupMembershipListener implements EventListener
+{
+    @Inject
+    private FamilyGroupMembershipIndex index;
+
+    @Inject
+    @Named("FamilyGroup:Family")
+    private Provider<PrimaryEntityGroupManager<FamilyGroup, Family>> familiesInFamilyGroupManager;
+
+    @Override
+    public String getName()
+    {
+        return "familyGroupMembershipListener";
+    }
+
+    @Override
+    public List<Event> getEvents()
+    {
+        return Arrays.<Event>asList(new ApplicationReadyEvent(), new DocumentCreatedEvent(),
+            new DocumentUpdatedEvent(), new DocumentDeletedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        if (event instanceof ApplicationReadyEvent) {
+            this.index.load();
+            return;
+        }
+
+        XWikiDocument document = (XWikiDocument) source;
+        if (document == null) {
+            return;
+        }
+
+        String documentId = document.getDocumentReference().getName();
+        if (event instanceof DocumentDeletedEvent) {
+            XWikiDocument original = document.getOriginalDocument();
+            if (hasObject(original, FamilyGroup.CLASS_REFERENCE)) {
+                this.index.setMembers(documentId, Collections.<String>emptyList());
+            } else if (hasObject(original, Family.CLASS_REFERENCE)) {
+                this.index.removeFamily(documentId);
+            }
+        } else if (hasObject(document, FamilyGroup.CLASS_REFERENCE)) {
+            List<String> familyIds = new ArrayList<>();
+            for (Family family : this.familiesInFamilyGroupManager.get().getMembers(new DefaultFamilyGroup(document))) {
+                familyIds.add(family.getId());
+            }
+            this.index.setMembers(documentId, familyIds);
+        }
+    }
+
+    private boolean hasObject(XWikiDocument document, EntityReference classReference)
+    {
+        return document != null && document.getXObject(classReference) != null;
+    }
+}
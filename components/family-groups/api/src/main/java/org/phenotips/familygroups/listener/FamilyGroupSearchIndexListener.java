@@ -0,0 +1,74 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.listener;
+
+import org.phenotips.familygroups.FamilyGroup;
+import org.phenotips.familygroups.FamilyGroupSearchIndex;
+import org.phenotips.familygroups.internal.DefaultFamilyGroup;
+
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Keeps the family group search index current when family groups are created, renamed or deleted.
+ *
+ * @version $Id$
+ */
+@Component
+@Named("familyGroupSearchIndexListener")
+@Singleton
+public class FamilyGroupSearchIndexListener implements EventListener
+{
+    @Inject
+    private FamilyGroupSearchIndex index;
+
+    @Override
+    public String getName()
+    {
+        return "familyGroupSearchIndexListener";
+    }
+
+    @Override
+    public List<Event> getEvents()
+    {
+        return Arrays.<Event>asList(new DocumentCreatedEvent(), new DocumentUpdatedEvent(),
+            new DocumentDeletedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        XWikiDocument document = (XWikiDocument) source;
+        if (document == null) {
+            return;
+        }
+
+        String documentId = document.getDocumentReference().getName();
+        if (!(event instanceof DocumentDeletedEvent) && document.getXObject(FamilyGroup.CLASS_REFERENCE) != null) {
+            this.index.update(documentId, new DefaultFamilyGroup(document).getName());
+        } else {
+            XWikiDocument original = document.getOriginalDocument();
+            if (original != null && original.getXObject(FamilyGroup.CLASS_REFERENCE) != null) {
+                this.index.remove(documentId);
+            }
+        }
+    }
+}
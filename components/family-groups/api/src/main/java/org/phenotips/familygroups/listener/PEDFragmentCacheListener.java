@@ -0,0 +1,69 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.listener;
+
+import org.phenotips.familygroups.Family;
+import org.phenotips.familygroups.internal.PEDFragmentCache;
+
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Drops the cached PED fragments of a family when the family is saved or deleted.
+ *
+ * @version $Id$
+ */
+@Component
+@Named("pedFragmentCacheListener")
+@Singleton
+public class PEDFragmentCacheListener implements EventListener
+{
+    @Inject
+    private PEDFragmentCache cache;
+
+    @Override
+    public String getName()
+    {
+        return "pedFragmentCacheListener";
+    }
+
+    @Override
+    public List<Event> getEvents()
+    {
+        return Arrays.<Event>asList(new DocumentUpdatedEvent(), new DocumentDeletedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        XWikiDocument document = (XWikiDocument) source;
+        if (document == null) {
+            return;
+        }
+        if (isFamily(document) || isFamily(document.getOriginalDocument())) {
+            this.cache.invalidate(document.getDocumentReference().getName());
+        }
+    }
+
+    private boolean isFamily(XWikiDocument document)
+    {
+        return document != null && document.getXObject(Family.CLASS_REFERENCE) != null;
+    }
+}
@@ -12,6 +12,9 @@
 import org.phenotips.familygroups.Family;
 import org.phenotips.familygroups.FamilyGroup;
 import org.phenotips.familygroups.FamilyGroupPedigreeExporter;
+import org.phenotips.familygroups.PedigreeExportMonitor;
+import org.phenotips.familygroups.PedigreeExportProgress;
+import org.phenotips.familygroups.internal.FamilyGroupMembershipIndex;
 import org.phenotips.security.authorization.AuthorizationService;
 import org.phenotips.studies.family.FamilyTools;
 
@@ -27,6 +30,7 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -57,9 +61,15 @@ public class FamilyGroupsScriptService implements ScriptService
     @Named("FamilyGroup:Family")
     private PrimaryEntityGroupManager<FamilyGroup, Family> familiesInFamilyGroupManager;
 
+    @Inject
+    private FamilyGroupMembershipIndex membershipIndex;
+
     @Inject
     private FamilyGroupPedigreeExporter familyGroupPedigreeExporter;
 
+    @Inject
+    private PedigreeExportMonitor pedigreeExportMonitor;
+
     @Inject
     private AuthorizationService authorizationService;
 
@@ -78,8 +88,19 @@ public class FamilyGroupsScriptService implements ScriptService
      */
     public Collection<FamilyGroup> getFamilyGroupsForFamily(String id)
     {
-        Family family = (Family) this.familyManager.get(id);
-        return this.familiesInFamilyGroupManager.getGroupsForMember(family);
+        Set<String> familyGroupIds = this.membershipIndex.getFamilyGroupIds(id);
+        if (familyGroupIds == null) {
+            Family family = (Family) this.familyManager.get(id);
+            return this.familiesInFamilyGroupManager.getGroupsForMember(family);
+        }
+        Collection<FamilyGroup> familyGroups = new ArrayList<>(familyGroupIds.size());
+        for (String familyGroupId : familyGroupIds) {
+            FamilyGroup familyGroup = (FamilyGroup) this.familyGroupManager.get(familyGroupId);
+            if (familyGroup != null) {
+                familyGroups.add(familyGroup);
+            }
+        }
+        return familyGroups;
     }
 
     /**
@@ -115,6 +136,26 @@ public List<String> getFamilyIdsInFamilyGroup(String familyGroupId)
         return result;
     }
 
+    /**
+     * Returns the progress and timing of the running and recently finished pedigree exports, for the Family Groups
+     * that the current user can view.
+     *
+     * @return a list of export progress objects, running exports first.
+     */
+    public List<PedigreeExportProgress> getPedigreeExports()
+    {
+        User user = this.userManager.getCurrentUser();
+        List<PedigreeExportProgress> result = new ArrayList<>();
+        for (PedigreeExportProgress export : this.pedigreeExportMonitor.getExports()) {
+            FamilyGroup familyGroup = (FamilyGroup) this.familyGroupManager.get(export.getFamilyGroupId());
+            if (familyGroup != null
+                && this.authorizationService.hasAccess(user, Right.VIEW, familyGroup.getDocumentReference())) {
+                result.add(export);
+            }
+        }
+        return result;
+    }
+
     /**
      * Creates a new FamilyGroup for the current user.
      *
@@ -0,0 +1,206 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.internal;
+
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests for the {@link DefaultFamilyGroupMembershipIndex} component.
+ *
+ * @version $Id$
+ */
+public class DefaultFamilyGroupMembershipIndexTest
+{
+    private static final String GROUP1 = "FAMGRP0000001";
+
+    private static final String GROUP2 = "FAMGRP0000002";
+
+    private static final String FAMILY1 = "FAM0000001";
+
+    private static final String FAMILY2 = "FAM0000002";
+
+    private static final String FAMILY3 = "FAM0000003";
+
+    @Rule
+    public final MockitoComponentMockingRule<FamilyGroupMembershipIndex> mocker =
+        new MockitoComponentMockingRule<FamilyGroupMembershipIndex>(DefaultFamilyGroupMembershipIndex.class);
+
+    private Query query;
+
+    private List<Object[]> rows = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        QueryManager qm = this.mocker.getInstance(QueryManager.class);
+        this.query = Mockito.mock(Query.class);
+        Mockito.when(qm.createQuery(Mockito.anyString(), Mockito.eq(Query.XWQL))).thenReturn(this.query);
+        Mockito.when(this.query.<Object[]>execute()).thenReturn(this.rows);
+
+        DocumentReferenceResolver<String> resolver =
+            this.mocker.getInstance(DocumentReferenceResolver.TYPE_STRING, "current");
+        for (String familyId : Arrays.asList(FAMILY1, FAMILY2, FAMILY3)) {
+            Mockito.when(resolver.resolve(reference(familyId)))
+                .thenReturn(new DocumentReference("xwiki", "Families", familyId));
+        }
+    }
+
+    @Test
+    public void loadedMembershipsAreFoundInBothDirections() throws Exception
+    {
+        bind(GROUP1, FAMILY1);
+        bind(GROUP1, FAMILY2);
+        bind(GROUP2, FAMILY2);
+        FamilyGroupMembershipIndex index = this.mocker.getComponentUnderTest();
+
+        Assert.assertTrue(index.load());
+        Assert.assertEquals(new HashSet<>(Arrays.asList(FAMILY1, FAMILY2)), index.getFamilyIds(GROUP1));
+        Assert.assertEquals(Collections.singleton(FAMILY2), index.getFamilyIds(GROUP2));
+        Assert.assertEquals(Collections.singleton(GROUP1), index.getFamilyGroupIds(FAMILY1));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(GROUP1, GROUP2)), index.getFamilyGroupIds(FAMILY2));
+    }
+
+    @Test
+    public void unknownIdentifiersHaveNoMemberships() throws Exception
+    {
+        bind(GROUP1, FAMILY1);
+        FamilyGroupMembershipIndex index = this.mocker.getComponentUnderTest();
+        index.load();
+
+        Assert.assertTrue(index.getFamilyIds("FAMGRP0000099").isEmpty());
+        Assert.assertTrue(index.getFamilyGroupIds("FAM0000099").isEmpty());
+    }
+
+    @Test
+    public void addAndRemoveMember() throws Exception
+    {
+        FamilyGroupMembershipIndex index = this.mocker.getComponentUnderTest();
+        index.load();
+        long modifications = index.getModificationCount();
+
+        index.addMember(GROUP1, FAMILY1);
+        Assert.assertEquals(Collections.singleton(FAMILY1), index.getFamilyIds(GROUP1));
+        Assert.assertEquals(Collections.singleton(GROUP1), index.getFamilyGroupIds(FAMILY1));
+
+        index.removeMember(GROUP1, FAMILY1);
+        Assert.assertTrue(index.getFamilyIds(GROUP1).isEmpty());
+        Assert.assertTrue(index.getFamilyGroupIds(FAMILY1).isEmpty());
+        Assert.assertEquals(modifications + 2, index.getModificationCount());
+    }
+
+    @Test
+    public void setMembersReplacesTheMemberships() throws Exception
+    {
+        bind(GROUP1, FAMILY1);
+        bind(GROUP1, FAMILY2);
+        FamilyGroupMembershipIndex index = this.mocker.getComponentUnderTest();
+        index.load();
+
+        index.setMembers(GROUP1, Arrays.asList(FAMILY2, FAMILY3));
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList(FAMILY2, FAMILY3)), index.getFamilyIds(GROUP1));
+        Assert.assertTrue(index.getFamilyGroupIds(FAMILY1).isEmpty());
+        Assert.assertEquals(Collections.singleton(GROUP1), index.getFamilyGroupIds(FAMILY3));
+
+        index.setMembers(GROUP1, Collections.<String>emptyList());
+        Assert.assertTrue(index.getFamilyIds(GROUP1).isEmpty());
+        Assert.assertTrue(index.getFamilyGroupIds(FAMILY2).isEmpty());
+    }
+
+    @Test
+    public void removeFamilyRemovesItFromAllGroups() throws Exception
+    {
+        bind(GROUP1, FAMILY1);
+        bind(GROUP1, FAMILY2);
+        bind(GROUP2, FAMILY1);
+        FamilyGroupMembershipIndex index = this.mocker.getComponentUnderTest();
+        index.load();
+
+        index.removeFamily(FAMILY1);
+
+        Assert.assertEquals(Collections.singleton(FAMILY2), index.getFamilyIds(GROUP1));
+        Assert.assertTrue(index.getFamilyIds(GROUP2).isEmpty());
+        Assert.assertTrue(index.getFamilyGroupIds(FAMILY1).isEmpty());
+        index.removeFamily("FAM0000099");
+    }
+
+    @Test
+    public void updatesReceivedWhileLoadingAreKept() throws Exception
+    {
+        bind(GROUP1, FAMILY1);
+        final FamilyGroupMembershipIndex index = this.mocker.getComponentUnderTest();
+        Mockito.when(this.query.<Object[]>execute()).thenAnswer(new Answer<List<Object[]>>()
+        {
+            @Override
+            public List<Object[]> answer(InvocationOnMock invocation)
+            {
+                // The query result, read before these changes were saved, no longer holds them
+                index.addMember(GROUP2, FAMILY3);
+                index.removeMember(GROUP1, FAMILY1);
+                return DefaultFamilyGroupMembershipIndexTest.this.rows;
+            }
+        });
+
+        Assert.assertTrue(index.load());
+
+        Assert.assertTrue(index.getFamilyIds(GROUP1).isEmpty());
+        Assert.assertEquals(Collections.singleton(FAMILY3), index.getFamilyIds(GROUP2));
+    }
+
+    @Test
+    public void failedLoadIsNotRetriedRightAway() throws Exception
+    {
+        Mockito.when(this.query.<Object[]>execute()).thenThrow(new QueryException("failed", this.query, null));
+        FamilyGroupMembershipIndex index = this.mocker.getComponentUnderTest();
+
+        Assert.assertFalse(index.load());
+        Assert.assertNull(index.getFamilyIds(GROUP1));
+        Assert.assertNull(index.getFamilyGroupIds(FAMILY1));
+        Mockito.verify(this.query, Mockito.times(1)).execute();
+    }
+
+    @Test
+    public void lookupsLoadTheIndexIfNeeded() throws Exception
+    {
+        bind(GROUP1, FAMILY1);
+        FamilyGroupMembershipIndex index = this.mocker.getComponentUnderTest();
+
+        Assert.assertEquals(Collections.singleton(FAMILY1), index.getFamilyIds(GROUP1));
+        Assert.assertEquals(Collections.singleton(GROUP1), index.getFamilyGroupIds(FAMILY1));
+        Mockito.verify(this.query, Mockito.times(1)).execute();
+    }
+
+    private void bind(String familyGroupId, String familyId)
+    {
+        this.rows.add(new Object[] { familyGroupId, reference(familyId) });
+    }
+
+    private static String reference(String familyId)
+    {
+        return "xwiki:Families." + familyId;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.internal;
+
+import org.phenotips.familygroups.FamilyGroupSearchIndex;
+
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Tests for the {@link DefaultFamilyGroupSearchIndex} component.
+ *
+ * @version $Id$
+ */
+public class DefaultFamilyGroupSearchIndexTest
+{
+    private static final String GROUP1 = "FAMGRP0000001";
+
+    private static final String GROUP2 = "FAMGRP0000002";
+
+    private static final String GROUP3 = "FAMGRP0000003";
+
+    private static final String GROUP4 = "FAMGRP0000004";
+
+    private static final String GROUP5 = "FAMGRP0000005";
+
+    private static final String GROUP6 = "FAMGRP0000006";
+
+    @Rule
+    public final MockitoComponentMockingRule<FamilyGroupSearchIndex> mocker =
+        new MockitoComponentMockingRule<FamilyGroupSearchIndex>(DefaultFamilyGroupSearchIndex.class);
+
+    private Query query;
+
+    private List<Object[]> rows = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        QueryManager qm = this.mocker.getInstance(QueryManager.class);
+        this.query = Mockito.mock(Query.class);
+        Mockito.when(qm.createQuery(Mockito.anyString(), Mockito.eq(Query.XWQL))).thenReturn(this.query);
+        Mockito.when(this.query.<Object[]>execute()).thenReturn(this.rows);
+    }
+
+    @Test
+    public void matchesAreRankedByKindThenNameLength() throws Exception
+    {
+        this.rows.add(new Object[] { GROUP1, "Sweetheart" });
+        this.rows.add(new Object[] { GROUP2, "Heart defects cohort" });
+        this.rows.add(new Object[] { GROUP3, "Congenital heart" });
+        this.rows.add(new Object[] { GROUP4, "Heart" });
+        this.rows.add(new Object[] { GROUP5, "Heart study" });
+        this.rows.add(new Object[] { GROUP6, "Liver" });
+        FamilyGroupSearchIndex index = this.mocker.getComponentUnderTest();
+
+        // Exact name, then prefixes from the shortest name, then word prefix, then substring
+        Assert.assertEquals(Arrays.asList(GROUP4, GROUP5, GROUP2, GROUP3, GROUP1), index.search(" HEART ", 10));
+        Assert.assertEquals(Arrays.asList(GROUP4, GROUP5), index.search("heart", 2));
+        Assert.assertEquals(Collections.singletonList(GROUP6), index.search(GROUP6.toLowerCase(), 10));
+        Assert.assertEquals(Collections.emptyList(), index.search("heart", 0));
+    }
+
+    @Test
+    public void shortInputsAreMatchedAgainstAllFamilyGroups() throws Exception
+    {
+        this.rows.add(new Object[] { GROUP1, "Cardiology" });
+        this.rows.add(new Object[] { GROUP2, "Neurology" });
+        this.rows.add(new Object[] { GROUP3, "Eye" });
+        FamilyGroupSearchIndex index = this.mocker.getComponentUnderTest();
+
+        Assert.assertEquals(Collections.singletonList(GROUP3), index.search("ey", 10));
+        Assert.assertEquals(Arrays.asList(GROUP2, GROUP1), index.search("o", 10));
+        Assert.assertEquals(Arrays.asList(GROUP3, GROUP2, GROUP1), index.search("", 10));
+        Assert.assertEquals(Arrays.asList(GROUP3, GROUP2, GROUP1), index.search(null, 10));
+    }
+
+    @Test
+    public void renameRemovesTheOldName() throws Exception
+    {
+        this.rows.add(new Object[] { GROUP1, "Cardiology" });
+        FamilyGroupSearchIndex index = this.mocker.getComponentUnderTest();
+        Assert.assertEquals(Collections.singletonList(GROUP1), index.search("cardio", 10));
+
+        index.update(GROUP1, "Neurology");
+
+        Assert.assertEquals(Collections.emptyList(), index.search("cardio", 10));
+        Assert.assertEquals(Collections.emptyList(), index.search("car", 10));
+        Assert.assertEquals(Collections.singletonList(GROUP1), index.search("neuro", 10));
+        // Trigrams shared by the old and new names are still found
+        Assert.assertEquals(Collections.singletonList(GROUP1), index.search("logy", 10));
+    }
+
+    @Test
+    public void removedFamilyGroupsAreNotFound() throws Exception
+    {
+        this.rows.add(new Object[] { GROUP1, "Cardiology" });
+        this.rows.add(new Object[] { GROUP2, "Cardiology research" });
+        FamilyGroupSearchIndex index = this.mocker.getComponentUnderTest();
+
+        index.remove(GROUP1);
+        Assert.assertEquals(Collections.singletonList(GROUP2), index.search("cardiology", 10));
+        Assert.assertEquals(Collections.singletonList(GROUP2), index.search("ca", 10));
+
+        index.remove(GROUP2);
+        index.remove("FAMGRP0000099");
+        Assert.assertEquals(Collections.emptyList(), index.search("cardiology", 10));
+        Assert.assertEquals(Collections.emptyList(), index.search("", 10));
+
+        index.update(GROUP1, "Cardiology");
+        Assert.assertEquals(Collections.singletonList(GROUP1), index.search("cardiology", 10));
+    }
+
+    @Test
+    public void trigramsFromDifferentFamilyGroupsDoNotMatch() throws Exception
+    {
+        this.rows.add(new Object[] { GROUP1, "abcd" });
+        this.rows.add(new Object[] { GROUP2, "bcde" });
+        FamilyGroupSearchIndex index = this.mocker.getComponentUnderTest();
+
+        // abc is only in the first group and cde only in the second, so the intersection is empty
+        Assert.assertEquals(Collections.emptyList(), index.search("abcde", 10));
+        Assert.assertEquals(Collections.emptyList(), index.search("xyz", 10));
+        // A prefix of the name ranks before a substring
+        Assert.assertEquals(Arrays.asList(GROUP2, GROUP1), index.search("bcd", 10));
+    }
+
+    @Test
+    public void unnamedFamilyGroupsAreFoundByIdentifier() throws Exception
+    {
+        this.rows.add(new Object[] { GROUP1, null });
+        FamilyGroupSearchIndex index = this.mocker.getComponentUnderTest();
+
+        Assert.assertEquals(Collections.singletonList(GROUP1), index.search("famgrp", 10));
+        Assert.assertEquals(Collections.singletonList(GROUP1), index.search("0001", 10));
+    }
+
+    @Test
+    public void searchFailsIfTheIndexCannotBeLoaded() throws Exception
+    {
+        Mockito.when(this.query.<Object[]>execute()).thenThrow(new QueryException("failed", this.query, null));
+        FamilyGroupSearchIndex index = this.mocker.getComponentUnderTest();
+
+        Assert.assertNull(index.search("heart", 10));
+    }
+}
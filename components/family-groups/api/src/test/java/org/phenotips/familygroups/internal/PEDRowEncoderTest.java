@@ -0,0 +1,114 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.internal;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link PEDRowEncoder} class, checking that it writes the same rows as
+ * {@code String.format("%s %s %s %s %s %s%n")}.
+ *
+ * @version $Id$
+ */
+public class PEDRowEncoderTest
+{
+    private static final String FAMILY_ID = "FAM0000001";
+
+    private static final int[] VALUES = { 0, 1, 2, 9, 10, 99, 100, 12345, -1, -10,
+        Integer.MAX_VALUE, Integer.MIN_VALUE };
+
+    @Test
+    public void rowsMatchTheFormattedRows() throws IOException
+    {
+        StringWriter out = new StringWriter();
+        PEDRowEncoder encoder = new PEDRowEncoder(out);
+        StringBuilder expected = new StringBuilder();
+
+        for (int value : VALUES) {
+            encoder.writeRow(FAMILY_ID, value, value, value, value, value);
+            expected.append(format(FAMILY_ID, value, value, value, value, value));
+        }
+        encoder.writeRow(FAMILY_ID, 5, 0, 0, 3, 0);
+        expected.append(format(FAMILY_ID, 5, 0, 0, 3, 0));
+        encoder.writeRow("", 1, 0, 0, 1, 2);
+        expected.append(format("", 1, 0, 0, 1, 2));
+        encoder.flush();
+
+        Assert.assertEquals(expected.toString(), out.toString());
+    }
+
+    @Test
+    public void rowsAreBufferedUntilFlushed() throws IOException
+    {
+        StringWriter out = new StringWriter();
+        PEDRowEncoder encoder = new PEDRowEncoder(out);
+
+        encoder.writeRow(FAMILY_ID, 1, 0, 0, 1, 2);
+        Assert.assertEquals("", out.toString());
+
+        encoder.flush();
+        Assert.assertEquals(format(FAMILY_ID, 1, 0, 0, 1, 2), out.toString());
+        encoder.flush();
+        Assert.assertEquals(format(FAMILY_ID, 1, 0, 0, 1, 2), out.toString());
+    }
+
+    @Test
+    public void rowsCrossingTheBufferBoundaryAreWrittenWhole() throws IOException
+    {
+        StringWriter out = new StringWriter();
+        PEDRowEncoder encoder = new PEDRowEncoder(out);
+        StringBuilder expected = new StringBuilder();
+
+        // Rows of varying lengths, so that the buffer fills up at every position within a row
+        for (int i = 0; i < 5000; i++) {
+            String familyId = "FAM" + repeat('0', i % 17) + i;
+            int value = VALUES[i % VALUES.length];
+            encoder.writeRow(familyId, i, value, i % 3 == 0 ? 0 : i - 1, i % 4, value);
+            expected.append(format(familyId, i, value, i % 3 == 0 ? 0 : i - 1, i % 4, value));
+        }
+        encoder.flush();
+
+        Assert.assertTrue(expected.length() > 10 * 8192);
+        Assert.assertEquals(expected.toString(), out.toString());
+    }
+
+    @Test
+    public void familyIdsLongerThanTheBufferAreWritten() throws IOException
+    {
+        StringWriter out = new StringWriter();
+        PEDRowEncoder encoder = new PEDRowEncoder(out);
+        String longId = repeat('F', 8192 + 10);
+        String exactId = repeat('E', 8192);
+
+        encoder.writeRow(FAMILY_ID, 1, 0, 0, 1, 2);
+        encoder.writeRow(longId, 2, 0, 0, 2, 1);
+        encoder.writeRow(exactId, 3, 1, 2, 1, 0);
+        encoder.flush();
+
+        Assert.assertEquals(format(FAMILY_ID, 1, 0, 0, 1, 2) + format(longId, 2, 0, 0, 2, 1)
+            + format(exactId, 3, 1, 2, 1, 0), out.toString());
+    }
+
+    private static String format(String familyId, int individualId, int fatherId, int motherId, int sex,
+        int affectedStatus)
+    {
+        return String.format("%s %s %s %s %s %s%n", familyId, individualId, fatherId, motherId, sex, affectedStatus);
+    }
+
+    private static String repeat(char c, int count)
+    {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
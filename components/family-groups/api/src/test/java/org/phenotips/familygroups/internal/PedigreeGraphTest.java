@@ -0,0 +1,167 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link PedigreeGraph} class, and the PED values {@link PedigreeGraphRecord} derives from it.
+ *
+ * @version $Id$
+ */
+public class PedigreeGraphTest
+{
+    private static final String FAMILY_ID = "FAM0000001";
+
+    private static final AffectedStatusMatcher NO_SELECTION = new AffectedStatusMatcher(null, null);
+
+    @Test
+    public void emptyDataHasNoNodes()
+    {
+        Assert.assertEquals(0, PedigreeGraph.fromJSON(null).size());
+        Assert.assertEquals(0, PedigreeGraph.fromJSON(new JSONObject()).getPersonCount());
+    }
+
+    @Test
+    public void consanguineousRelationshipIsNotAPerson() throws IOException
+    {
+        PedigreeGraph graph = load("consanguinity");
+
+        Assert.assertEquals(17, graph.size());
+        Assert.assertEquals(9, graph.getPersonCount());
+        Assert.assertTrue(graph.isRelationship(14));
+        Assert.assertFalse(graph.isPerson(14));
+        Assert.assertEquals(PedigreeGraph.NONE, graph.getPersonNumber(14));
+        Assert.assertTrue(graph.isChildhub(15));
+    }
+
+    @Test
+    public void consanguineousPartnersShareGrandparents() throws IOException
+    {
+        PedigreeGraph graph = load("consanguinity");
+
+        Assert.assertEquals(10, graph.getFather(16));
+        Assert.assertEquals(13, graph.getMother(16));
+        Assert.assertEquals(4, graph.getFather(10));
+        Assert.assertEquals(5, graph.getMother(13));
+        for (int parent : new int[] { 4, 5 }) {
+            Assert.assertEquals(0, graph.getFather(parent));
+            Assert.assertEquals(1, graph.getMother(parent));
+        }
+        Assert.assertArrayEquals(new int[] { 13 }, graph.getPartners(10));
+        Assert.assertArrayEquals(new int[] { 16 }, graph.getChildren(13));
+        Assert.assertArrayEquals(new int[] { 4, 5 }, graph.getChildren(0));
+    }
+
+    @Test
+    public void fatherIsTheMalePartnerWhicheverIsLinkedFirst() throws IOException
+    {
+        PedigreeGraph graph = load("consanguinity");
+
+        // The daughter (5) is linked to the relationship before her husband (7)
+        Assert.assertEquals(7, graph.getFather(13));
+        Assert.assertEquals(5, graph.getMother(13));
+    }
+
+    @Test
+    public void consanguineousPedigreeRecords() throws IOException
+    {
+        PedigreeGraph graph = load("consanguinity");
+        PedigreeGraphRecord record = new PedigreeGraphRecord(graph, FAMILY_ID,
+            new AffectedStatusMatcher(Collections.singleton("219700"), null));
+
+        record.setNode(16);
+        Assert.assertEquals(FAMILY_ID, record.getFamilyId());
+        Assert.assertEquals(9, record.getIndividualId());
+        Assert.assertEquals(7, record.getFatherId());
+        Assert.assertEquals(8, record.getMotherId());
+        Assert.assertEquals(2, record.getSex());
+        Assert.assertTrue(record.isAffected());
+        Assert.assertEquals("P0000016", record.getPatientId());
+
+        record.setNode(0);
+        Assert.assertEquals(1, record.getIndividualId());
+        Assert.assertEquals(0, record.getFatherId());
+        Assert.assertEquals(0, record.getMotherId());
+        Assert.assertEquals(1, record.getSex());
+        Assert.assertFalse(record.isAffected());
+        Assert.assertNull(record.getPatientId());
+    }
+
+    @Test
+    public void twinsShareParents() throws IOException
+    {
+        PedigreeGraph graph = load("twins");
+
+        Assert.assertEquals(5, graph.getPersonCount());
+        for (int child : new int[] { 4, 5, 6 }) {
+            Assert.assertEquals(1, graph.getFather(child));
+            Assert.assertEquals(0, graph.getMother(child));
+        }
+        Assert.assertArrayEquals(new int[] { 4, 5, 6 }, graph.getChildren(0));
+        Assert.assertArrayEquals(new int[] { 4, 5, 6 }, graph.getChildren(1));
+        Assert.assertArrayEquals(new int[0], graph.getChildren(4));
+    }
+
+    @Test
+    public void adoptedInChildHasTheAdoptiveParents() throws IOException
+    {
+        PedigreeGraph graph = load("adopted");
+
+        Assert.assertTrue(graph.isPerson(5));
+        Assert.assertEquals(0, graph.getFather(5));
+        Assert.assertEquals(1, graph.getMother(5));
+        Assert.assertEquals("P0000005", graph.getPatientId(5));
+        Assert.assertArrayEquals(new int[] { 4, 5 }, graph.getChildren(1));
+    }
+
+    @Test
+    public void missingGenderIsExportedAsUnknownSex() throws IOException
+    {
+        PedigreeGraph graph = load("adopted");
+        PedigreeGraphRecord record = new PedigreeGraphRecord(graph, FAMILY_ID, NO_SELECTION);
+
+        Assert.assertEquals(PedigreeGraph.SEX_UNKNOWN, graph.getSex(5));
+        record.setNode(5);
+        Assert.assertEquals(3, record.getSex());
+    }
+
+    @Test
+    public void relationshipWithASinglePartnerGivesNoParents() throws IOException
+    {
+        PedigreeGraph graph = load("adopted");
+        PedigreeGraphRecord record = new PedigreeGraphRecord(graph, FAMILY_ID, NO_SELECTION);
+
+        Assert.assertEquals(PedigreeGraph.NONE, graph.getFather(9));
+        Assert.assertEquals(PedigreeGraph.NONE, graph.getMother(9));
+        Assert.assertArrayEquals(new int[0], graph.getChildren(6));
+        Assert.assertArrayEquals(new int[0], graph.getPartners(6));
+        record.setNode(9);
+        Assert.assertEquals(6, record.getIndividualId());
+        Assert.assertEquals(0, record.getFatherId());
+        Assert.assertEquals(0, record.getMotherId());
+    }
+
+    private PedigreeGraph load(String name) throws IOException
+    {
+        try (InputStream stream = getClass().getResourceAsStream("/pedigrees/" + name + ".json");
+            Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+            return PedigreeGraph.fromJSON(new JSONObject(new JSONTokener(reader)));
+        }
+    }
+}
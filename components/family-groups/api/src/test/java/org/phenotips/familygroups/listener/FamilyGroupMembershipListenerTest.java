@@ -0,0 +1,93 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.familygroups.listener;
+
+import org.phenotips.familygroups.Family;
+import org.phenotips.familygroups.FamilyGroup;
+import org.phenotips.familygroups.internal.FamilyGroupMembershipIndex;
+
+import org.xwiki.bridge.event.ApplicationReadyEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.observation.EventListener;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+/**
+ * Tests for the {@link FamilyGroupMembershipListener} event listener.
+ *
+ * @version $Id$
+ */
+public class FamilyGroupMembershipListenerTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<EventListener> mocker =
+        new MockitoComponentMockingRule<EventListener>(FamilyGroupMembershipListener.class);
+
+    @Test
+    public void indexIsLoadedWhenTheApplicationStarts() throws Exception
+    {
+        this.mocker.getComponentUnderTest().onEvent(new ApplicationReadyEvent(), null, null);
+
+        FamilyGroupMembershipIndex index = this.mocker.getInstance(FamilyGroupMembershipIndex.class);
+        Mockito.verify(index).load();
+    }
+
+    @Test
+    public void deletedFamilyIsRemovedFromTheIndex() throws Exception
+    {
+        this.mocker.getComponentUnderTest().onEvent(new DocumentDeletedEvent(),
+            deletedDocument("FAM0000001", Family.CLASS_REFERENCE), null);
+
+        FamilyGroupMembershipIndex index = this.mocker.getInstance(FamilyGroupMembershipIndex.class);
+        Mockito.verify(index).removeFamily("FAM0000001");
+        Mockito.verifyNoMoreInteractions(index);
+    }
+
+    @Test
+    public void deletedFamilyGroupHasNoMoreMembers() throws Exception
+    {
+        this.mocker.getComponentUnderTest().onEvent(new DocumentDeletedEvent(),
+            deletedDocument("FAMGRP0000001", FamilyGroup.CLASS_REFERENCE), null);
+
+        FamilyGroupMembershipIndex index = this.mocker.getInstance(FamilyGroupMembershipIndex.class);
+        Mockito.verify(index).setMembers("FAMGRP0000001", Collections.<String>emptyList());
+        Mockito.verifyNoMoreInteractions(index);
+    }
+
+    @Test
+    public void otherDeletedDocumentsAreIgnored() throws Exception
+    {
+        this.mocker.getComponentUnderTest().onEvent(new DocumentDeletedEvent(),
+            deletedDocument("WebHome", null), null);
+
+        FamilyGroupMembershipIndex index = this.mocker.getInstance(FamilyGroupMembershipIndex.class);
+        Mockito.verifyZeroInteractions(index);
+    }
+
+    private XWikiDocument deletedDocument(String name, EntityReference classReference)
+    {
+        XWikiDocument document = Mockito.mock(XWikiDocument.class);
+        XWikiDocument original = Mockito.mock(XWikiDocument.class);
+        Mockito.when(document.getDocumentReference()).thenReturn(new DocumentReference("xwiki", "data", name));
+        Mockito.when(document.getOriginalDocument()).thenReturn(original);
+        if (classReference != null) {
+            Mockito.when(original.getXObject(classReference)).thenReturn(new BaseObject());
+        }
+        return document;
+    }
+}
@@ -51,4 +51,35 @@ public interface FamilyGroupFamilies extends XWikiRestComponent
     @Produces(MediaType.APPLICATION_JSON)
     Response removeFamilyFromFamilyGroup(@PathParam("family-group-id") String familyGroupId,
         @PathParam("family-id") String familyId);
+
+    /**
+     * Adds several Families to the specified Family Group at once, saving the Family Group only once. The request body
+     * is a JSON object with a "familyIds" array. The response reports the outcome for each requested Family: "added",
+     * "unchanged" if it already was in the Family Group, "notFound", or "failed" if saving the Family Group failed.
+     *
+     * @param familyGroupId the Family Group ID.
+     * @param json the JSON request body.
+     * @return JSON with the Family Group "id", the "results" for each Family, and the updated "familyCount".
+     */
+    @POST
+    @Path("/add")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    Response addFamiliesToFamilyGroup(@PathParam("family-group-id") String familyGroupId, String json);
+
+    /**
+     * Removes several Families from the specified Family Group at once, saving the Family Group only once. The request
+     * body is a JSON object with a "familyIds" array. The response reports the outcome for each requested Family:
+     * "removed", "unchanged" if it wasn't in the Family Group, "notFound", or "failed" if saving the Family Group
+     * failed.
+     *
+     * @param familyGroupId the Family Group ID.
+     * @param json the JSON request body.
+     * @return JSON with the Family Group "id", the "results" for each Family, and the updated "familyCount".
+     */
+    @POST
+    @Path("/remove")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    Response removeFamiliesFromFamilyGroup(@PathParam("family-group-id") String familyGroupId, String json);
 }
@@ -9,6 +9,7 @@
 
 import org.xwiki.rest.XWikiRestComponent;
 
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
@@ -26,14 +27,21 @@ public interface FamilyGroups extends XWikiRestComponent
 {
     /**
      * Retrieves a set of Family Groups using an input string to filter results. Returns a JSON response containing
-     * basic data for each Family Group, limited to a specific number of Family Groups returned per query.
+     * basic data for each Family Group that the current user can view, one page at a time. Exact matches come first,
+     * followed by Family Groups with an ID or name starting with the input, then by other matches.
      *
      * @param input a string used to filter results. The string will be used for partial word search in the names and
      *              IDs of existing Family Groups.
+     * @param offset the number of viewable matches to skip, {@code 0} for the first page
+     * @param limit the maximum number of matches to return, at most 100
      * @return a JSON object containing a key called "matchedFamilyGroups", which corresponds to an array of match
-     *         results.
+     *         results, along with the "offset" and "limit" of the page and whether there are more viewable matches
+     *         after it, as "hasMore";
+     *         a 400 Bad Request response if the offset is negative or the limit isn't positive
      */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
-    Response getFamilyGroups(@QueryParam("input") String input);
+    Response getFamilyGroups(@QueryParam("input") String input,
+        @QueryParam("offset") @DefaultValue("0") int offset,
+        @QueryParam("limit") @DefaultValue("15") int limit);
 }
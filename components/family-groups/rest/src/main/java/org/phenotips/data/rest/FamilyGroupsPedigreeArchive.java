@@ -0,0 +1,45 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.data.rest;
+
+import org.xwiki.rest.XWikiRestComponent;
+
+import java.util.List;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Response;
+
+/**
+ * Presents the pedigree export of all the Family Groups as a single archive, via REST.
+ *
+ * @version $Id$
+ */
+@Path("/family-groups/pedigrees")
+public interface FamilyGroupsPedigreeArchive extends XWikiRestComponent
+{
+    /**
+     * Returns a zip archive holding one file per Family Group the current user can view, each containing the
+     * pedigrees of the Family Group in the requested format. The response behaves as a file download, and is streamed
+     * to the client as each family is exported. An empty response is returned if the user cannot view any Family
+     * Group. Individuals having any of the selected disorders or phenotypes are marked as affected. Each of these
+     * parameters can be repeated, and each value can also hold several comma-separated identifiers.
+     *
+     * @param format the name of the export format used for each Family Group, for example {@code ped}, {@code ped.gz}
+     *            or {@code ndjson}; PED is used if missing.
+     * @param disorders the selected disorders, for example {@code MIM:143100}; the {@code MIM:} prefix is optional.
+     * @param phenotypes the selected HPO phenotypes, for example {@code HP:0001250}.
+     * @return a response containing a zip archive of all viewable Family Groups.
+     */
+    @GET
+    @Produces("application/zip")
+    Response getPedigreeArchive(@QueryParam("format") String format, @QueryParam("disorder") List<String> disorders,
+        @QueryParam("phenotype") List<String> phenotypes);
+}
@@ -0,0 +1,68 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.data.rest;
+
+import org.phenotips.rest.RequiredAccess;
+
+import org.xwiki.rest.XWikiRestComponent;
+
+import java.util.List;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+/**
+ * Presents Family Group pedigree export as a REST endpoint, in any of the available pedigree export formats: PED
+ * ({@code text/plain}), compressed PED ({@code application/gzip}) and JSON lines ({@code application/x-ndjson}).
+ *
+ * @version $Id$
+ */
+@Path("/family-groups/{family-group-id}/pedigree")
+public interface PedigreeExport extends XWikiRestComponent
+{
+    /**
+     * Returns a response containing a Family Group exported in the format selected by content negotiation, or by the
+     * {@code format} parameter, which takes precedence over the {@code Accept} header. PED is used when the client
+     * accepts any media type. The response behaves as a file download, and is streamed to the client as each family is
+     * exported. An empty response is returned if the Family Group contains no families. Individuals having any of the
+     * selected disorders or phenotypes are marked as affected. Each of these parameters can be repeated, and each
+     * value can also hold several comma-separated identifiers.
+     * <p>
+     * When a {@code since} timestamp is given, only the families changed after that time are exported. In formats
+     * which can record removed families, such as {@code ndjson}, they are followed by a tombstone for each family
+     * removed from the Family Group since then. Since PED rows can only describe individuals, incremental PED exports
+     * instead list the removed families, comma-separated, in the {@code X-Removed-Families} response header; the
+     * header is left out if the state of the Family Group at that time is unknown, in which case all its families
+     * are exported. The {@code X-Export-Time} response header holds the timestamp to pass as {@code since} in the
+     * next incremental export.
+     * <p>
+     * No media types are declared as produced by this resource, so that formats provided by other modules can be
+     * negotiated as well.
+     *
+     * @param familyGroupId the ID of the Family Group to export.
+     * @param format the name of the export format, for example {@code ped}, {@code ped.gz} or {@code ndjson}; optional.
+     * @param disorders the selected disorders, for example {@code MIM:143100}; the {@code MIM:} prefix is optional.
+     * @param phenotypes the selected HPO phenotypes, for example {@code HP:0001250}.
+     * @param since the time of a previous export, in milliseconds since the epoch, to only export the changes made
+     *            since then; optional.
+     * @param headers the request headers, holding the media types accepted by the client.
+     * @return a response containing a Family Group in the negotiated format, a 406 response if none of the accepted
+     *         media types can be produced, or a 400 response if the format or the timestamp are invalid.
+     */
+    @GET
+    @RequiredAccess("view")
+    Response getPedigreeExport(@PathParam("family-group-id") String familyGroupId,
+        @QueryParam("format") String format, @QueryParam("disorder") List<String> disorders,
+        @QueryParam("phenotype") List<String> phenotypes, @QueryParam("since") String since,
+        @Context HttpHeaders headers);
+}
@@ -11,10 +11,13 @@
 
 import org.xwiki.rest.XWikiRestComponent;
 
+import java.util.List;
+
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
@@ -27,14 +30,20 @@
 public interface PedigreePEDExport extends XWikiRestComponent
 {
     /**
-     * Returns a response containing a Family Group exported to PED format. The response behaves as a file download.
+     * Returns a response containing a Family Group exported to PED format. The response behaves as a file download,
+     * and is streamed to the client as each family is exported. An empty response is returned if the Family Group
+     * contains no families. Individuals having any of the selected disorders or phenotypes are marked as affected.
+     * Each parameter can be repeated, and each value can also hold several comma-separated identifiers.
      *
      * @param familyGroupId the ID of the Family Group to export.
+     * @param disorders the selected disorders, for example {@code MIM:143100}; the {@code MIM:} prefix is optional.
+     * @param phenotypes the selected HPO phenotypes, for example {@code HP:0001250}.
      * @return a response containing a Family Group exported to PED format.
      */
     @GET
     @Produces(MediaType.TEXT_PLAIN)
     @RequiredAccess("view")
-    Response getPEDExport(@PathParam("family-group-id") String familyGroupId);
+    Response getPEDExport(@PathParam("family-group-id") String familyGroupId,
+        @QueryParam("disorder") List<String> disorders, @QueryParam("phenotype") List<String> phenotypes);
 }
 
@@ -20,12 +20,19 @@
 import org.xwiki.users.User;
 import org.xwiki.users.UserManager;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 
 /**
@@ -38,6 +45,18 @@
 @Singleton
 public class DefaultFamilyGroupFamilies implements FamilyGroupFamilies
 {
+    private static final String FAMILY_IDS_KEY = "familyIds";
+
+    private static final String ADDED = "added";
+
+    private static final String REMOVED = "removed";
+
+    private static final String UNCHANGED = "unchanged";
+
+    private static final String NOT_FOUND = "notFound";
+
+    private static final String FAILED = "failed";
+
     @Inject
     @Named("FamilyGroup")
     private PrimaryEntityManager familyGroupManager;
@@ -99,6 +118,91 @@ public Response removeFamilyFromFamilyGroup(String familyGroupId, String familyI
         }
     }
 
+    @Override
+    public Response addFamiliesToFamilyGroup(String familyGroupId, String json)
+    {
+        return updateFamilies(familyGroupId, json, true);
+    }
+
+    @Override
+    public Response removeFamiliesFromFamilyGroup(String familyGroupId, String json)
+    {
+        return updateFamilies(familyGroupId, json, false);
+    }
+
+    /**
+     * Adds or removes several Families at once. Families which are not found, or which are already in the requested
+     * state, are reported as such and left out, and the remaining ones are changed with a single save of the Family
+     * Group.
+     *
+     * @param familyGroupId the Family Group ID.
+     * @param json the JSON request body, with a "familyIds" array.
+     * @param add true to add the Families, false to remove them.
+     * @return the outcome for each Family, or an error response if the whole request is rejected.
+     */
+    private Response updateFamilies(String familyGroupId, String json, boolean add)
+    {
+        FamilyGroup familyGroup = (FamilyGroup) this.familyGroupManager.get(familyGroupId);
+        if (familyGroup == null) {
+            return generateErrorResponse("Family Group not found.", Response.Status.NOT_FOUND);
+        }
+        if (!curUserHasEditPermission(familyGroup)) {
+            return generateErrorResponse("User lacks permission to add or remove Families for this Family Group.",
+                Response.Status.FORBIDDEN);
+        }
+        JSONArray familyIds = new JSONObject(json).optJSONArray(FAMILY_IDS_KEY);
+        if (familyIds == null) {
+            return generateErrorResponse("The request must contain a \"familyIds\" array.",
+                Response.Status.BAD_REQUEST);
+        }
+
+        Set<String> currentFamilyIds = familyGroup.getFamilyIds();
+        Map<String, String> outcomes = new LinkedHashMap<>();
+        List<Family> changed = new ArrayList<>();
+        for (int i = 0; i < familyIds.length(); i++) {
+            String familyId = familyIds.optString(i);
+            if (outcomes.containsKey(familyId)) {
+                continue;
+            }
+            Family family = (Family) this.familyManager.get(familyId);
+            if (family == null) {
+                outcomes.put(familyId, NOT_FOUND);
+            } else if (currentFamilyIds.contains(familyId) == add) {
+                outcomes.put(familyId, UNCHANGED);
+            } else {
+                outcomes.put(familyId, null);
+                changed.add(family);
+            }
+        }
+
+        boolean success = true;
+        String changedOutcome = add ? ADDED : REMOVED;
+        if (!changed.isEmpty()) {
+            success = add ? this.familiesInFamilyGroupManager.addAllMembers(familyGroup, changed)
+                : this.familiesInFamilyGroupManager.removeAllMembers(familyGroup, changed);
+        }
+        if (!success) {
+            changedOutcome = FAILED;
+        }
+
+        JSONArray results = new JSONArray();
+        for (Map.Entry<String, String> outcome : outcomes.entrySet()) {
+            JSONObject result = new JSONObject();
+            result.put("familyId", outcome.getKey());
+            result.put("status", outcome.getValue() == null ? changedOutcome : outcome.getValue());
+            results.put(result);
+        }
+        JSONObject response = new JSONObject();
+        response.put("id", familyGroup.getId());
+        response.put("results", results);
+        response.put("familyCount", familyGroup.getFamilyIds().size());
+
+        return Response.status(success ? Response.Status.OK : Response.Status.INTERNAL_SERVER_ERROR)
+            .entity(response)
+            .type(MediaType.APPLICATION_JSON)
+            .build();
+    }
+
     /**
      * Checks the endpoint inputs for errors, returning an appropriate response in case an error is found. Checks for
      * existence (non-null) on both inputs, as well as user permissions to modify the Family Group.
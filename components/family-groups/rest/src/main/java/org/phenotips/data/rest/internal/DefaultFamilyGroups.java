@@ -10,15 +10,21 @@
 import org.phenotips.data.rest.FamilyGroups;
 import org.phenotips.entities.PrimaryEntityManager;
 import org.phenotips.familygroups.FamilyGroup;
+import org.phenotips.familygroups.FamilyGroupSearchIndex;
 import org.phenotips.security.authorization.AuthorizationService;
 
 import org.xwiki.component.annotation.Component;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.EntityReferenceResolver;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryManager;
 import org.xwiki.security.authorization.Right;
+import org.xwiki.users.User;
 import org.xwiki.users.UserManager;
 
+import java.util.Collections;
 import java.util.List;
 
 import javax.inject.Inject;
@@ -32,8 +38,8 @@
 import org.slf4j.Logger;
 
 /**
- * Default implementation of Family Groups via REST, using an XWQL query to fetch results and the Entities API to
- * process results.
+ * Default implementation of Family Groups via REST, using the {@link FamilyGroupSearchIndex} to find and rank results,
+ * or an XWQL query if the index isn't available, and the Entities API to process the results in the requested page.
  *
  * @version $Id$
  */
@@ -42,13 +48,19 @@
 @Singleton
 public class DefaultFamilyGroups implements FamilyGroups
 {
-    /** The hardcoded results limit for queries performed using this endpoint. */
+    /** The default number of results returned by this endpoint. */
     public static final int RESULTS_LIMIT = 15;
 
+    /** The maximum number of results which can be requested at once. */
+    public static final int MAX_RESULTS_LIMIT = 100;
+
     @Inject
     @Named("FamilyGroup")
     private PrimaryEntityManager familyGroupManager;
 
+    @Inject
+    private FamilyGroupSearchIndex searchIndex;
+
     @Inject
     private QueryManager qm;
 
@@ -61,43 +73,94 @@ public class DefaultFamilyGroups implements FamilyGroups
     @Inject
     private UserManager users;
 
+    @Inject
+    @Named("current")
+    private EntityReferenceResolver<EntityReference> currentResolver;
+
     @Override
-    public Response getFamilyGroups(String input)
+    public Response getFamilyGroups(String input, int offset, int limit)
     {
-        List<String> queryResults = runQuery(input);
-
-        JSONArray results = generateResponse(queryResults);
+        if (offset < 0 || limit <= 0) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        Page page = new Page(offset, Math.min(limit, MAX_RESULTS_LIMIT));
+
+        // One more match than the page needs tells whether there are more; ask for more if some aren't viewable
+        int candidates = (int) Math.min((long) offset + page.limit + 1, Integer.MAX_VALUE);
+        List<String> matches = findMatches(input, candidates);
+        fillPage(matches, page);
+        while (!page.hasMore && matches.size() == candidates && candidates < Integer.MAX_VALUE) {
+            candidates = (int) Math.min(2L * candidates, Integer.MAX_VALUE);
+            matches = findMatches(input, candidates);
+            fillPage(matches, page);
+        }
 
         JSONObject resp = new JSONObject();
-        resp.put("matchedFamilyGroups", results);
+        resp.put("matchedFamilyGroups", page.results);
+        resp.put("offset", offset);
+        resp.put("limit", page.limit);
+        resp.put("hasMore", page.hasMore);
 
         return Response.ok(resp, MediaType.APPLICATION_JSON).build();
     }
 
-    private JSONArray generateResponse(List<String> queryResults)
+    /**
+     * Returns the best matches, from the search index, or from the database if the index isn't available.
+     *
+     * @param input the text typed by the user
+     * @param limit the maximum number of matches to return
+     * @return the identifiers of the matching family groups, best first
+     */
+    private List<String> findMatches(String input, int limit)
     {
-        JSONArray results = new JSONArray();
-        for (String queryResult : queryResults) {
-            FamilyGroup familyGroup = (FamilyGroup) this.familyGroupManager.get(queryResult);
-            if (familyGroup == null) {
+        List<String> matches = this.searchIndex.search(input, limit);
+        if (matches == null) {
+            matches = runQuery(input, limit);
+        }
+        return matches == null ? Collections.<String>emptyList() : matches;
+    }
+
+    /**
+     * Continues filling a page of results with the matches that the current user can view, starting after the
+     * matches already processed for that page. Access rights are checked on the document reference of each match, so
+     * that only the family groups on the requested page are loaded, and matches are no longer checked once the page is
+     * full and one more viewable match is found.
+     *
+     * @param matches the identifiers of the matching family groups, best first
+     * @param page the page being filled
+     */
+    private void fillPage(List<String> matches, Page page)
+    {
+        User user = this.users.getCurrentUser();
+        for (; page.position < matches.size(); page.position++) {
+            String match = matches.get(page.position);
+            EntityReference reference = this.currentResolver.resolve(
+                new EntityReference(match, EntityType.DOCUMENT, FamilyGroup.DEFAULT_DATA_SPACE), EntityType.DOCUMENT);
+            if (!this.authorizationService.hasAccess(user, Right.VIEW, reference)) {
                 continue;
             }
-
-            if (!this.authorizationService.hasAccess(
-                this.users.getCurrentUser(), Right.VIEW, familyGroup.getDocumentReference())) {
+            if (page.skipped < page.offset) {
+                page.skipped++;
                 continue;
             }
+            if (page.results.length() == page.limit) {
+                page.hasMore = true;
+                return;
+            }
 
+            FamilyGroup familyGroup = (FamilyGroup) this.familyGroupManager.get(match);
+            if (familyGroup == null) {
+                continue;
+            }
             JSONObject fgJson = new JSONObject();
             fgJson.put("id", familyGroup.getId());
             fgJson.put("name", familyGroup.getName());
             fgJson.put("description", familyGroup.getDescription());
-            results.put(fgJson);
+            page.results.put(fgJson);
         }
-        return results;
     }
 
-    private List<String> runQuery(String input)
+    private List<String> runQuery(String input, int limit)
     {
         StringBuilder querySb = new StringBuilder();
         querySb.append("select doc.name ");
@@ -105,13 +168,14 @@ private List<String> runQuery(String input)
         querySb.append("       doc.object(PhenoTips.FamilyGroupClass) as familyGroup ");
         querySb.append(" where lower(doc.name) like :input");
         querySb.append(" or lower(familyGroup.name) like :input");
+        querySb.append(" order by doc.name");
 
         String queryString = querySb.toString();
         Query query = null;
         List<String> queryResults = null;
         try {
             query = this.qm.createQuery(queryString, Query.XWQL);
-            query.setLimit(RESULTS_LIMIT);
+            query.setLimit(limit);
             query.bindValue("input", String.format("%%%s%%", input.toLowerCase()));
             queryResults = query.execute();
         } catch (QueryException e) {
@@ -119,4 +183,30 @@ private List<String> runQuery(String input)
         }
         return queryResults;
     }
+
+    /**
+     * A page of results being filled, and how far the matches were processed for it.
+     */
+    private static final class Page
+    {
+        private final int offset;
+
+        private final int limit;
+
+        private final JSONArray results = new JSONArray();
+
+        /** How many viewable matches were skipped before the page. */
+        private int skipped;
+
+        /** How many matches were processed. */
+        private int position;
+
+        private boolean hasMore;
+
+        Page(int offset, int limit)
+        {
+            this.offset = offset;
+            this.limit = limit;
+        }
+    }
 }
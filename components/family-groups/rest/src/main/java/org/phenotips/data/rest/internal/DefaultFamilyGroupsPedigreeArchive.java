@@ -0,0 +1,151 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.data.rest.internal;
+
+import org.phenotips.concurrent.WorkerContextPropagator;
+import org.phenotips.data.rest.FamilyGroupsPedigreeArchive;
+import org.phenotips.familygroups.FamilyGroup;
+import org.phenotips.familygroups.FamilyGroupPedigreeExporter;
+import org.phenotips.familygroups.PedigreeExportFormat;
+import org.phenotips.security.authorization.AuthorizationService;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.EntityReferenceResolver;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.users.User;
+import org.xwiki.users.UserManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.slf4j.Logger;
+
+/**
+ * Default implementation of the Family Groups pedigree archive via REST, using an XWQL query to list the Family Groups
+ * and the FamilyGroupPedigreeExporter service to write the archive.
+ *
+ * @version $Id$
+ */
+@Component
+@Named("org.phenotips.data.rest.internal.DefaultFamilyGroupsPedigreeArchive")
+@Singleton
+public class DefaultFamilyGroupsPedigreeArchive implements FamilyGroupsPedigreeArchive
+{
+    /** The format used when none is requested. */
+    private static final String DEFAULT_FORMAT = "ped";
+
+    @Inject
+    private FamilyGroupPedigreeExporter familyGroupPedigreeExporter;
+
+    @Inject
+    private QueryManager qm;
+
+    @Inject
+    private AuthorizationService authorizationService;
+
+    @Inject
+    private UserManager users;
+
+    @Inject
+    @Named("current")
+    private EntityReferenceResolver<EntityReference> currentResolver;
+
+    @Inject
+    private WorkerContextPropagator contextPropagator;
+
+    @Inject
+    @Named("context")
+    private Provider<ComponentManager> componentManagerProvider;
+
+    @Inject
+    private Logger logger;
+
+    @Override
+    public Response getPedigreeArchive(String format, List<String> disorders, List<String> phenotypes)
+    {
+        String formatName = format == null || format.isEmpty() ? DEFAULT_FORMAT : format;
+        if (!this.componentManagerProvider.get().hasComponent(PedigreeExportFormat.class, formatName)) {
+            return generateErrorResponse("Unknown export format.", Response.Status.BAD_REQUEST);
+        }
+
+        List<String> familyGroupIds = getViewableFamilyGroups();
+        if (familyGroupIds == null) {
+            return generateErrorResponse("Failed to list the Family Groups.", Response.Status.INTERNAL_SERVER_ERROR);
+        }
+        if (familyGroupIds.isEmpty()) {
+            return Response.noContent().build();
+        }
+
+        PedigreeStreamingOutput content = new PedigreeStreamingOutput(this.familyGroupPedigreeExporter,
+            this.contextPropagator, familyGroupIds, formatName, disorders, phenotypes);
+        Response.ResponseBuilder resp = Response.ok(content, "application/zip");
+        resp.header("Content-Disposition", "attachment; filename=\"family-groups.zip\"");
+
+        return resp.build();
+    }
+
+    /**
+     * Lists the Family Groups the current user can view. Rights are checked on the family group documents, without
+     * loading the family groups themselves.
+     *
+     * @return the IDs of the viewable Family Groups, in alphabetical order, or {@code null} if the query failed
+     */
+    private List<String> getViewableFamilyGroups()
+    {
+        List<String> queryResults;
+        try {
+            Query query = this.qm.createQuery("select doc.name from Document doc, "
+                + "doc.object(PhenoTips.FamilyGroupClass) as familyGroup order by doc.name", Query.XWQL);
+            queryResults = query.execute();
+        } catch (QueryException e) {
+            this.logger.error("Error while listing Family Groups: [{}] ", e.getMessage());
+            return null;
+        }
+
+        User user = this.users.getCurrentUser();
+        List<String> familyGroupIds = new ArrayList<>(queryResults.size());
+        for (String queryResult : queryResults) {
+            EntityReference reference = this.currentResolver.resolve(
+                new EntityReference(queryResult, EntityType.DOCUMENT, FamilyGroup.DEFAULT_DATA_SPACE),
+                EntityType.DOCUMENT);
+            if (this.authorizationService.hasAccess(user, Right.VIEW, reference)) {
+                familyGroupIds.add(queryResult);
+            }
+        }
+        return familyGroupIds;
+    }
+
+    /**
+     * Generates an error response.
+     *
+     * @param errorText the plain text of the response.
+     * @param status the HTTP status code of the response.
+     * @return the Response object.
+     */
+    private Response generateErrorResponse(String errorText, Response.Status status)
+    {
+        return Response
+            .status(status)
+            .entity(errorText)
+            .type(MediaType.TEXT_PLAIN)
+            .build();
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.data.rest.internal;
+
+import org.phenotips.concurrent.WorkerContextPropagator;
+import org.phenotips.data.rest.PedigreeExport;
+import org.phenotips.entities.PrimaryEntityManager;
+import org.phenotips.familygroups.FamilyGroup;
+import org.phenotips.familygroups.FamilyGroupPedigreeExporter;
+import org.phenotips.familygroups.PedigreeExportFormat;
+import org.phenotips.security.authorization.AuthorizationService;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.users.User;
+import org.xwiki.users.UserManager;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.slf4j.Logger;
+
+/**
+ * Default implementation of Family Group pedigree export as a REST endpoint, negotiating the format among the
+ * available {@link PedigreeExportFormat} components and using the FamilyGroupPedigreeExporter service.
+ *
+ * @version $Id$
+ */
+@Component
+@Named("org.phenotips.data.rest.internal.DefaultPedigreeExport")
+@Singleton
+public class DefaultPedigreeExport implements PedigreeExport
+{
+    /** The format used when the client accepts any media type. */
+    private static final String DEFAULT_FORMAT = "ped";
+
+    /** The response header listing the families removed since an incremental export, in formats without tombstones. */
+    private static final String REMOVED_FAMILIES_HEADER = "X-Removed-Families";
+
+    @Inject
+    private FamilyGroupPedigreeExporter familyGroupPedigreeExporter;
+
+    @Inject
+    private AuthorizationService authorizationService;
+
+    @Inject
+    private UserManager users;
+
+    @Inject
+    @Named("FamilyGroup")
+    private PrimaryEntityManager familyGroupManager;
+
+    @Inject
+    private WorkerContextPropagator contextPropagator;
+
+    @Inject
+    @Named("context")
+    private Provider<ComponentManager> componentManagerProvider;
+
+    @Inject
+    private Logger logger;
+
+    @Override
+    public Response getPedigreeExport(String familyGroupId, String format, List<String> disorders,
+        List<String> phenotypes, String since, HttpHeaders headers)
+    {
+        FamilyGroup familyGroup = (FamilyGroup) this.familyGroupManager.get(familyGroupId);
+        if (familyGroup == null) {
+            return generateErrorResponse("Family group not found.", Response.Status.NOT_FOUND);
+        }
+
+        // Need view permissions on the Family Group doc (currently no permission checking on the Families themselves)
+        User user = this.users.getCurrentUser();
+        DocumentReference familyGroupRef = familyGroup.getDocumentReference();
+        if (!this.authorizationService.hasAccess(user, Right.VIEW, familyGroupRef)) {
+            return generateErrorResponse("User does not have permission to view requested Family Group.",
+                Response.Status.FORBIDDEN);
+        }
+
+        Map<String, PedigreeExportFormat> formats;
+        try {
+            formats = this.componentManagerProvider.get().getInstanceMap(PedigreeExportFormat.class);
+        } catch (ComponentLookupException e) {
+            this.logger.error("Failed to look up the pedigree export formats: {}", e.getMessage(), e);
+            return generateErrorResponse("Pedigree export is not available.", Response.Status.INTERNAL_SERVER_ERROR);
+        }
+
+        String formatName;
+        if (format != null && !format.isEmpty()) {
+            if (!formats.containsKey(format)) {
+                return generateErrorResponse("Unknown export format.", Response.Status.BAD_REQUEST);
+            }
+            formatName = format;
+        } else {
+            formatName = negotiateFormat(formats, headers.getAcceptableMediaTypes());
+            if (formatName == null) {
+                return generateErrorResponse("None of the accepted media types can be produced.",
+                    Response.Status.NOT_ACCEPTABLE);
+            }
+        }
+
+        Date sinceDate = null;
+        if (since != null && !since.isEmpty()) {
+            try {
+                sinceDate = new Date(Long.parseLong(since));
+            } catch (NumberFormatException e) {
+                return generateErrorResponse("Invalid timestamp.", Response.Status.BAD_REQUEST);
+            }
+        } else if (familyGroup.getFamilyIds().isEmpty()) {
+            // Incremental exports may still hold tombstones
+            return Response.noContent().build();
+        }
+
+        PedigreeExportFormat exportFormat = formats.get(formatName);
+
+        // Captured before any family is read, so that changes made while exporting are part of the next export
+        long exportTime = System.currentTimeMillis();
+        PedigreeStreamingOutput content = new PedigreeStreamingOutput(this.familyGroupPedigreeExporter,
+            this.contextPropagator, familyGroupId, formatName, disorders, phenotypes);
+        content.setSince(sinceDate);
+        Response.ResponseBuilder resp = Response.ok(content, exportFormat.getMediaType());
+        resp.header("X-Export-Time", String.valueOf(exportTime));
+        if (sinceDate != null && !exportFormat.supportsRemovedFamilies()) {
+            // The content can't hold tombstones, so removed families are listed in a header instead
+            Set<String> removedIds = this.familyGroupPedigreeExporter.getRemovedFamilyIds(familyGroupId, sinceDate);
+            if (removedIds != null) {
+                resp.header(REMOVED_FAMILIES_HEADER, joinIds(removedIds));
+            }
+        }
+        resp.header("Content-Disposition",
+            "attachment; filename=\"" + familyGroupId + '.' + exportFormat.getFileExtension() + '"');
+
+        return resp.build();
+    }
+
+    /**
+     * Picks the format matching the most preferred of the accepted media types.
+     *
+     * @param formats the available formats, keyed by name
+     * @param accepted the media types accepted by the client, most preferred first
+     * @return the name of the selected format, or {@code null} if no format produces any of the accepted media types
+     */
+    private String negotiateFormat(Map<String, PedigreeExportFormat> formats, List<MediaType> accepted)
+    {
+        if (accepted == null || accepted.isEmpty()) {
+            return formats.containsKey(DEFAULT_FORMAT) ? DEFAULT_FORMAT : null;
+        }
+        PedigreeExportFormat defaultFormat = formats.get(DEFAULT_FORMAT);
+        for (MediaType mediaType : accepted) {
+            // PED is preferred over the other formats matching the same media type, e.g. */*
+            if (defaultFormat != null && mediaType.isCompatible(MediaType.valueOf(defaultFormat.getMediaType()))) {
+                return DEFAULT_FORMAT;
+            }
+            for (Map.Entry<String, PedigreeExportFormat> entry : formats.entrySet()) {
+                if (mediaType.isCompatible(MediaType.valueOf(entry.getValue().getMediaType()))) {
+                    return entry.getKey();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Joins family identifiers into a comma-separated list.
+     *
+     * @param ids the identifiers to join
+     * @return the identifiers separated by commas, empty if there are none
+     */
+    private String joinIds(Set<String> ids)
+    {
+        StringBuilder result = new StringBuilder();
+        for (String id : ids) {
+            if (result.length() > 0) {
+                result.append(',');
+            }
+            result.append(id);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Generates an error response.
+     *
+     * @param errorText the plain text of the response.
+     * @param status the HTTP status code of the response.
+     * @return the Response object.
+     */
+    private Response generateErrorResponse(String errorText, Response.Status status)
+    {
+        return Response
+            .status(status)
+            .entity(errorText)
+            .type(MediaType.TEXT_PLAIN)
+            .build();
+    }
+}
@@ -7,6 +7,7 @@
  */
 package org.phenotips.data.rest.internal;
 
+import org.phenotips.concurrent.WorkerContextPropagator;
 import org.phenotips.data.rest.PedigreePEDExport;
 import org.phenotips.entities.PrimaryEntityManager;
 import org.phenotips.familygroups.FamilyGroup;
@@ -19,13 +20,14 @@
 import org.xwiki.users.User;
 import org.xwiki.users.UserManager;
 
-import java.util.ArrayList;
+import java.util.List;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 /**
  * Default implementation of Family Group pedigree export to PED as a REST endpoint, using the
@@ -51,8 +53,11 @@ public class DefaultPedigreePEDExport implements PedigreePEDExport
     @Named("FamilyGroup")
     private PrimaryEntityManager familyGroupManager;
 
+    @Inject
+    private WorkerContextPropagator contextPropagator;
+
     @Override
-    public Response getPEDExport(String familyGroupId)
+    public Response getPEDExport(String familyGroupId, List<String> disorders, List<String> phenotypes)
     {
         FamilyGroup familyGroup = (FamilyGroup) this.familyGroupManager.get(familyGroupId);
         if (familyGroup == null) {
@@ -67,12 +72,12 @@ public Response getPEDExport(String familyGroupId)
                 Response.Status.FORBIDDEN);
         }
 
-        String pedContent =
-            this.familyGroupPedigreeExporter.exportFamilyGroupAsPED(familyGroupId, new ArrayList<String>());
-        if (pedContent.isEmpty()) {
+        if (familyGroup.getFamilyIds().isEmpty()) {
             return Response.noContent().build();
         }
 
+        StreamingOutput pedContent = new PedigreeStreamingOutput(this.familyGroupPedigreeExporter,
+            this.contextPropagator, familyGroupId, "ped", disorders, phenotypes);
         Response.ResponseBuilder resp = Response.ok(pedContent, MediaType.TEXT_PLAIN);
         resp.header("Content-Disposition", "attachment; filename=\"" + familyGroupId + ".ped\"");
 
@@ -0,0 +1,170 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.data.rest.internal;
+
+import org.phenotips.concurrent.WorkerContextPropagator;
+import org.phenotips.familygroups.FamilyGroupPedigreeExporter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Writes a family group export, or an archive of several family groups, directly to the response stream, one family
+ * at a time. The response may be written after the request's execution context was cleaned up, so the export is
+ * prepared by the {@link WorkerContextPropagator} while handling the request, and runs in a fresh execution context
+ * with the user, wiki and document of the request if the writing thread has none.
+ *
+ * @version $Id$
+ */
+final class PedigreeStreamingOutput implements StreamingOutput
+{
+    private final FamilyGroupPedigreeExporter exporter;
+
+    /** The export, wrapped to run in an execution context of its own when needed. */
+    private final Callable<Void> task;
+
+    private final String familyGroupId;
+
+    /** The IDs of the family groups to write as an archive, {@code null} when exporting a single family group. */
+    private final Collection<String> archivedGroupIds;
+
+    private final String format;
+
+    private final Set<String> disorders;
+
+    private final Set<String> phenotypes;
+
+    /** The date of a previous export, to only export the changes made since then; {@code null} for full exports. */
+    private Date since;
+
+    /** The stream to write to, set while {@link #write(OutputStream) writing}. */
+    private OutputStream output;
+
+    /**
+     * Constructor for the export of a single family group, capturing the user, wiki and document
+     * of the current request.
+     *
+     * @param exporter the exporter writing the content
+     * @param propagator prepares the export to run with the user, wiki and document of the current request
+     * @param familyGroupId the ID of the family group to export
+     * @param format the name of the export format
+     * @param disorders the selected disorders, as received in the request
+     * @param phenotypes the selected phenotypes, as received in the request
+     */
+    PedigreeStreamingOutput(FamilyGroupPedigreeExporter exporter, WorkerContextPropagator propagator,
+        String familyGroupId, String format, List<String> disorders, List<String> phenotypes)
+    {
+        this(exporter, propagator, familyGroupId, null, format, disorders, phenotypes);
+    }
+
+    /**
+     * Constructor for the export of several family groups as an archive, capturing the user, wiki and
+     * document of the current request.
+     *
+     * @param exporter the exporter writing the content
+     * @param propagator prepares the export to run with the user, wiki and document of the current request
+     * @param familyGroupIds the IDs of the family groups to export
+     * @param format the name of the export format used for each family group
+     * @param disorders the selected disorders, as received in the request
+     * @param phenotypes the selected phenotypes, as received in the request
+     */
+    PedigreeStreamingOutput(FamilyGroupPedigreeExporter exporter, WorkerContextPropagator propagator,
+        Collection<String> familyGroupIds, String format, List<String> disorders, List<String> phenotypes)
+    {
+        this(exporter, propagator, null, familyGroupIds, format, disorders, phenotypes);
+    }
+
+    private PedigreeStreamingOutput(FamilyGroupPedigreeExporter exporter, WorkerContextPropagator propagator,
+        String familyGroupId, Collection<String> archivedGroupIds, String format, List<String> disorders,
+        List<String> phenotypes)
+    {
+        this.exporter = exporter;
+        this.task = propagator.propagate(new Callable<Void>()
+        {
+            @Override
+            public Void call() throws IOException
+            {
+                export();
+                return null;
+            }
+        });
+        this.familyGroupId = familyGroupId;
+        this.archivedGroupIds = archivedGroupIds;
+        this.format = format;
+        this.disorders = splitValues(disorders);
+        this.phenotypes = splitValues(phenotypes);
+    }
+
+    /**
+     * Turns the export of a single family group into an incremental export.
+     *
+     * @param since the date of a previous export, {@code null} for a full export
+     */
+    void setSince(Date since)
+    {
+        this.since = since;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException
+    {
+        this.output = output;
+        try {
+            this.task.call();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        } finally {
+            this.output = null;
+        }
+    }
+
+    private void export() throws IOException
+    {
+        if (this.archivedGroupIds != null) {
+            this.exporter.exportFamilyGroups(this.archivedGroupIds, this.format, this.disorders, this.phenotypes,
+                this.output);
+        } else if (this.since != null) {
+            this.exporter.exportFamilyGroupChanges(this.familyGroupId, this.since, this.format, this.disorders,
+                this.phenotypes, this.output);
+        } else {
+            this.exporter.exportFamilyGroup(this.familyGroupId, this.format, this.disorders, this.phenotypes,
+                this.output);
+        }
+    }
+
+    /**
+     * Collects the identifiers passed in repeated and/or comma-separated query parameter values.
+     *
+     * @param values the query parameter values, may be null
+     * @return the distinct, non-blank identifiers
+     */
+    private static Set<String> splitValues(List<String> values)
+    {
+        Set<String> result = new LinkedHashSet<>();
+        if (values != null) {
+            for (String value : values) {
+                for (String item : value.split(",")) {
+                    if (!item.trim().isEmpty()) {
+                        result.add(item.trim());
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.concurrent;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates numbered daemon threads with a common name prefix, so that workers are easy to spot in thread dumps and
+ * never block shutdown.
+ *
+ * @version $Id$
+ */
+public class DaemonThreadFactory implements ThreadFactory
+{
+    private final String namePrefix;
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * Constructor.
+     *
+     * @param namePrefix the prefix of the thread names, followed by the number of each thread
+     */
+    public DaemonThreadFactory(String namePrefix)
+    {
+        this.namePrefix = namePrefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable)
+    {
+        Thread thread = new Thread(runnable, this.namePrefix + this.count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
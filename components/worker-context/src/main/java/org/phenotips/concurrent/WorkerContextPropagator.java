@@ -0,0 +1,35 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.concurrent;
+
+import org.xwiki.component.annotation.Role;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Prepares tasks submitted from a request thread to run in worker threads. The XWiki context of a request, with its
+ * request, store session and per-request caches, must not be shared with other threads, so each task runs in a fresh
+ * execution context of its own, initialized like the context of a new request, into which only the current user,
+ * wiki and document of the submitting thread are copied.
+ *
+ * @version $Id$
+ */
+@Role
+public interface WorkerContextPropagator
+{
+    /**
+     * Captures the user, wiki and document of the current thread, and wraps the task so that it runs with them in a
+     * new execution context. If the task ends up running in a thread which already has an execution context, for
+     * example the submitting thread itself when a pool runs rejected tasks in the caller, that context is used as is.
+     *
+     * @param <T> the type of the task result
+     * @param task the task to run in a worker thread
+     * @return the wrapped task, to be submitted instead of the original one
+     */
+    <T> Callable<T> propagate(Callable<T> task);
+}
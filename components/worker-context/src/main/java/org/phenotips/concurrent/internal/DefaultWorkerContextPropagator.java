@@ -0,0 +1,98 @@
+/*
+ * This file is subject to the terms and conditions defined in file LICENSE,
+ * which is part of this source code package.
+ *
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ */
+package org.phenotips.concurrent.internal;
+
+import org.phenotips.concurrent.WorkerContextPropagator;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.model.reference.DocumentReference;
+
+import java.util.concurrent.Callable;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Default implementation of {@link WorkerContextPropagator}. Worker contexts are set up by the
+ * {@link ExecutionContextManager}, which runs the same initializers as for a new request and creates a new XWiki
+ * context from the stub context.
+ *
+ * @version $Id$
+ */
+@Component
+@Singleton
+public class DefaultWorkerContextPropagator implements WorkerContextPropagator
+{
+    @Inject
+    private Execution execution;
+
+    @Inject
+    private ExecutionContextManager contextManager;
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    @Override
+    public <T> Callable<T> propagate(Callable<T> task)
+    {
+        XWikiContext xcontext = this.xcontextProvider.get();
+        return new WorkerTask<>(task, xcontext.getWikiId(), xcontext.getUserReference(), xcontext.getDoc());
+    }
+
+    /**
+     * Runs a task in a new execution context, with the user, wiki and document captured when it was submitted.
+     *
+     * @param <T> the type of the task result
+     */
+    private final class WorkerTask<T> implements Callable<T>
+    {
+        private final Callable<T> task;
+
+        private final String wikiId;
+
+        private final DocumentReference userReference;
+
+        private final XWikiDocument document;
+
+        WorkerTask(Callable<T> task, String wikiId, DocumentReference userReference, XWikiDocument document)
+        {
+            this.task = task;
+            this.wikiId = wikiId;
+            this.userReference = userReference;
+            this.document = document;
+        }
+
+        @Override
+        public T call() throws Exception
+        {
+            Execution threadExecution = DefaultWorkerContextPropagator.this.execution;
+            if (threadExecution.getContext() != null) {
+                return this.task.call();
+            }
+            ExecutionContext context = new ExecutionContext();
+            threadExecution.setContext(context);
+            try {
+                DefaultWorkerContextPropagator.this.contextManager.initialize(context);
+                XWikiContext xcontext = DefaultWorkerContextPropagator.this.xcontextProvider.get();
+                xcontext.setWikiId(this.wikiId);
+                xcontext.setUserReference(this.userReference);
+                xcontext.setDoc(this.document);
+                return this.task.call();
+            } finally {
+                threadExecution.removeContext();
+            }
+        }
+    }
+}